@@ -0,0 +1,24 @@
+package dnit.commons.exception;
+
+public final class TempoEsgotadoException extends RuntimeException {
+
+    private final long timeoutMs;
+
+    public TempoEsgotadoException(String message, long timeoutMs) {
+        super(message);
+        this.timeoutMs = timeoutMs;
+    }
+
+    public TempoEsgotadoException(String message, long timeoutMs, Throwable cause) {
+        super(message, cause);
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Tempo limite (em milissegundos) que foi esgotado
+     */
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+}
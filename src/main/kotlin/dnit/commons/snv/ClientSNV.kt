@@ -1,6 +1,13 @@
 package dnit.commons.snv
 
 import dnit.commons.snv.impl.ClientSNVImplementation
+import dnit.commons.snv.impl.EscopoSNV
+import dnit.commons.snv.impl.MetricasSNV
+import java.nio.file.Path
+import java.util.concurrent.CompletableFuture
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.future.future
 import kotlinx.coroutines.runBlocking
 
 
@@ -11,12 +18,326 @@ object ClientSNV {
 
 
 
+    /**
+     * Configura os timeouts utilizados nas requisições à API-Geo.
+     * Um novo [TransporteHttpApiGeo] é criado com os valores informados, apontando para a API do DNIT.
+     * @param connectionTimeoutMs Tempo máximo para estabelecer a conexão
+     * @param readTimeoutMs Tempo máximo de espera pela resposta de cada requisição
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun configuraTimeouts(
+        connectionTimeoutMs: Long = 15_000L,
+        readTimeoutMs: Long = 30_000L,
+    ) {
+        configuraTransporte(TransporteHttpApiGeo(connectionTimeoutMs = connectionTimeoutMs, readTimeoutMs = readTimeoutMs))
+    }
+
+
+
+
+    /**
+     * Configura o transporte das requisições à API-Geo.
+     * Permite apontar para um espelho ([TransporteHttpApiGeo] com outra URL base)
+     * ou responder a partir de fixtures gravadas ([TransporteLocalApiGeo]).
+     */
+    @JvmStatic
+    fun configuraTransporte(transporte: TransporteApiGeo) {
+        ClientSNVImplementation.configuraTransporte(transporte)
+    }
+
+
+
+
+    /**
+     * Registra um listener de métricas (latência por endpoint, códigos HTTP, retries,
+     * buffers consultados e eventos de cache). Veja [MetricasSNVEmMemoria].
+     */
+    @JvmStatic
+    fun registraMetricas(listener: MetricasSNVListener) {
+        MetricasSNV.registra(listener)
+    }
+
+
+
+
+    /**
+     * Remove um listener registrado em [registraMetricas]
+     */
+    @JvmStatic
+    fun removeMetricas(listener: MetricasSNVListener) {
+        MetricasSNV.remove(listener)
+    }
+
+
+
+
+    /**
+     * Habilita (ou desabilita) o circuit breaker e o orçamento de retries das chamadas à API-Geo.
+     * Desabilitados por padrão: cada consulta repete até o seu `retryCount` e então falha.
+     * Habilitados, após uma sequência de falhas as consultas falham imediatamente (retornando resultados
+     * vazios) ao invés de repetir tentativas contra um serviço degradado, e os retries passam a ser
+     * limitados pelo orçamento, mesmo que o `retryCount` permita mais tentativas.
+     * @param habilitado Se falso, as chamadas não passam pelo circuito nem pelo orçamento
+     * @param limiteFalhas Falhas consecutivas necessárias para abrir o circuito
+     * @param tempoAbertoMs Tempo que o circuito permanece aberto antes de testar a recuperação
+     * @param chamadasSemiAberto Chamadas de teste liberadas simultaneamente no estado semi-aberto
+     * @param proporcaoRetry Tokens de retry ganhos a cada requisição (0.2 = 1 retry a cada 5 requisições)
+     * @param maximoTokensRetry Máximo de retries acumulados no orçamento
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun configuraCircuitBreaker(
+        habilitado: Boolean = true,
+        limiteFalhas: Int = 5,
+        tempoAbertoMs: Long = 30_000L,
+        chamadasSemiAberto: Int = 1,
+        proporcaoRetry: Double = 0.2,
+        maximoTokensRetry: Double = 100.0,
+    ) {
+        ClientSNVImplementation.configuraCircuitBreaker(
+            habilitado, limiteFalhas, tempoAbertoMs, chamadasSemiAberto, proporcaoRetry, maximoTokensRetry
+        )
+    }
+
+
+
+
+    /**
+     * Retorna o estado do circuit breaker da API-Geo, a quantidade de aberturas e o orçamento de retries
+     */
+    @JvmStatic
+    fun estatisticasCircuito() : EstatisticasCircuito {
+        return ClientSNVImplementation.estatisticasCircuito()
+    }
+
+
+
+
+    /**
+     * Configura o limite de taxa (token bucket) e de concorrência (bulkhead) das chamadas à API-Geo.
+     * Chamadas acima do limite aguardam em fila por até [maxEsperaMs] antes de falhar.
+     * @param requisicoesPorSegundo Taxa máxima de chamadas. Se nulo, não há limite de taxa
+     * @param rajada Quantidade de chamadas que podem ser feitas de uma vez após um período ocioso
+     * @param maxConcorrencia Quantidade máxima de chamadas simultâneas
+     * @param maxEsperaMs Tempo máximo de espera na fila
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun configuraLimitador(
+        requisicoesPorSegundo: Double? = null,
+        rajada: Int = 1,
+        maxConcorrencia: Int = 64,
+        maxEsperaMs: Long = 30_000L,
+    ) {
+        ClientSNVImplementation.configuraLimitador(requisicoesPorSegundo, rajada, maxConcorrencia, maxEsperaMs)
+    }
+
+
+
+
+    /**
+     * Retorna o tamanho da fila, chamadas em execução e tempos de espera do limitador da API-Geo
+     */
+    @JvmStatic
+    fun estatisticasLimitador() : EstatisticasLimitador {
+        return ClientSNVImplementation.estatisticasLimitador()
+    }
+
+
+
+
+    /**
+     * Configura o cache de trechos do SNV (por uf, br, tipo e data).
+     * O cache atual é descartado e substituído por um novo com os parâmetros informados.
+     * Entradas expiradas são revalidadas com requisições condicionais (ETag/Last-Modified).
+     * @param maxItems Quantidade máxima de listas de trechos mantidas em memória
+     * @param ttlMs Tempo de vida de cada entrada. Se nulo as entradas não expiram
+     * @param maxObsoletoMs Stale-while-revalidate: por quanto tempo após expirar uma entrada ainda é
+     * retornada de imediato enquanto é atualizada em segundo plano. Se nulo, a atualização é feita na chamada
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun configuraCacheTrechos(
+        maxItems: Int = 128,
+        ttlMs: Long? = null,
+        maxObsoletoMs: Long? = null,
+    ) {
+        ClientSNVImplementation.configuraCacheTrechos(maxItems, ttlMs, maxObsoletoMs)
+    }
+
+
+
+
+    /**
+     * Retorna as estatísticas de uso (hits, misses e evictions) do cache de trechos
+     */
+    @JvmStatic
+    fun estatisticasCacheTrechos() : EstatisticasCache {
+        return ClientSNVImplementation.estatisticasCacheTrechos()
+    }
+
+
+
+
+    /**
+     * Habilita (ou desabilita) o cache de trechos em disco, um segundo nível abaixo do cache em memória.
+     * Os trechos são gravados em um arquivo binário por (uf, br, tipo, versão do SNV) e reaproveitados
+     * após reinicializações, sem novas consultas à API-Geo.
+     * @param diretorio Diretório dos arquivos. Se nulo, o cache em disco é desabilitado
+     */
+    @JvmStatic
+    fun configuraCacheDisco(diretorio: Path?) {
+        ClientSNVImplementation.configuraCacheDisco(diretorio)
+    }
+
+
+
+
+    /**
+     * Exporta o cache de trechos em disco para um único arquivo de snapshot
+     * @return Quantidade de listas de trechos exportadas
+     */
+    @JvmStatic
+    fun exportaSnapshotTrechos(destino: Path) : Int {
+        return ClientSNVImplementation.exportaSnapshotTrechos(destino)
+    }
+
+
+
+
+    /**
+     * Importa um snapshot gerado por [exportaSnapshotTrechos] para o cache de trechos em disco,
+     * permitindo que uma nova instância comece com os trechos já disponíveis.
+     * @return Quantidade de listas de trechos importadas
+     */
+    @JvmStatic
+    fun importaSnapshotTrechos(origem: Path) : Int {
+        return ClientSNVImplementation.importaSnapshotTrechos(origem)
+    }
+
+
+
+
+    /**
+     * Habilita (ou desabilita) a linha do tempo local de versões do SNV utilizada por [obtemVersaoSnv].
+     * Desabilitada por padrão: cada chamada consulta a API-Geo. Habilitada, datas entre duas observações
+     * com a mesma versão são respondidas sem consultar a API-Geo, de modo que uma versão publicada
+     * durante o dia só é percebida após o [ttlMs] das observações vizinhas.
+     * As observações anteriores são descartadas e cada uma passa a valer por [ttlMs].
+     * @param habilitado Se falso, a linha do tempo é descartada
+     * @param maxObsoletoMs Stale-while-revalidate: por quanto tempo após expirar uma observação ainda é
+     * retornada de imediato enquanto é atualizada em segundo plano. Se nulo, a atualização é feita na chamada
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun configuraCacheVersoes(
+        habilitado: Boolean = true,
+        ttlMs: Long = 21_600_000L,
+        maxObsoletoMs: Long? = null,
+    ) {
+        ClientSNVImplementation.configuraCacheVersoes(habilitado, ttlMs, maxObsoletoMs)
+    }
+
+
+
+
+    /**
+     * Habilita (ou desabilita) o cache de respostas de [obtemSNVs].
+     * A chave é a coordenada arredondada para [casasDecimais] casas, a data de referência,
+     * os filtros de uf/br e a sequência de buffers. Apenas respostas não vazias são armazenadas.
+     * @param habilitado Se falso, o cache é descartado
+     * @param casasDecimais Precisão da coordenada na chave (5 casas ≈ 1,1 m)
+     * @param maxItems Quantidade máxima de respostas mantidas
+     * @param ttlMs Tempo de vida de cada resposta. Se nulo as respostas não expiram
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun configuraCacheRespostas(
+        habilitado: Boolean = true,
+        casasDecimais: Int = 5,
+        maxItems: Int = 50_000,
+        ttlMs: Long? = 86_400_000L,
+    ) {
+        ClientSNVImplementation.configuraCacheRespostas(habilitado, casasDecimais, maxItems, ttlMs)
+    }
+
+
+
+
+    /**
+     * Retorna as estatísticas de uso do cache de respostas (zeradas se o cache estiver desabilitado)
+     */
+    @JvmStatic
+    fun estatisticasCacheRespostas() : EstatisticasCache {
+        return ClientSNVImplementation.estatisticasCacheRespostas()
+    }
+
+
+
+
+    /**
+     * Habilita (ou desabilita) a seleção adaptativa de buffer.
+     * O cliente memoriza, por célula espacial, o buffer que retornou resultado no localizarkm e
+     * passa a iniciar a sequência de buffers por ele nas próximas consultas da mesma célula.
+     * @param habilitado Se falso, a tabela é descartada e a sequência original de buffers é utilizada
+     * @param tamanhoCelulaGraus Tamanho (em graus) do lado de cada célula
+     * @param maxCelulas Quantidade máxima de células memorizadas
+     * @param arquivo Arquivo opcional para persistir a tabela (carregado aqui, salvo em [salvaBufferAdaptativo])
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun configuraBufferAdaptativo(
+        habilitado: Boolean = true,
+        tamanhoCelulaGraus: Double = 0.05,
+        maxCelulas: Int = 10_000,
+        arquivo: Path? = null,
+    ) {
+        ClientSNVImplementation.configuraBufferAdaptativo(habilitado, tamanhoCelulaGraus, maxCelulas, arquivo)
+    }
+
+
+
+
+    /**
+     * Habilita (ou desabilita) o modo para threads virtuais nos métodos `*Blocking`.
+     * Com o modo habilitado a consulta é executada sem coroutines, na própria thread chamadora:
+     * as requisições usam [TransporteApiGeo.executaBloqueante], as esperas entre retries usam
+     * [Thread.sleep] e a leitura das respostas e o cache em disco não trocam de thread.
+     * Em uma thread virtual, as esperas de I/O e de retry apenas desmontam a thread virtual.
+     * O `timeoutTotalMs` limita o timeout de cada requisição e as esperas da chamada.
+     *
+     * O paralelismo interno é mantido com threads virtuais próprias (threads de plataforma antes do JDK 21):
+     * uma por coordenada em [obtemSNVsEmLoteBlocking] e por combinação em [preaquecerCacheBlocking]
+     * (no máximo `paralelismo` ao mesmo tempo) e uma por buffer da janela com `buffersParalelos`.
+     * As rotas de uma coordenada são resolvidas sequencialmente.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun configuraThreadsVirtuais(habilitado: Boolean = true) {
+        ClientSNVImplementation.threadsVirtuais = habilitado
+    }
+
+
+
+
+    /**
+     * Salva a tabela de buffer adaptativo no arquivo informado em [configuraBufferAdaptativo]
+     */
+    @JvmStatic
+    fun salvaBufferAdaptativo() {
+        ClientSNVImplementation.salvaBufferAdaptativo()
+    }
+
+
+
+
     /**
      * Retorna a versão do SNV para a data atual
      * @return Versão do SNV encontrada ou null se não encontrada
      */
     @JvmStatic
-    fun obtemVersaoSnvAtualBlocking() : String? = runBlocking {
+    fun obtemVersaoSnvAtualBlocking() : String? = bloqueante({ ClientSNVImplementation.obtemVersaoSnvAtualBloqueante() }) {
         obtemVersaoSnvAtual()
     }
 
@@ -34,15 +355,28 @@ object ClientSNV {
 
 
 
+    /**
+     * Retorna a versão do SNV para a data atual, sem bloquear a thread chamadora
+     * @return Future com a versão do SNV encontrada ou null se não encontrada
+     */
+    @JvmStatic
+    fun obtemVersaoSnvAtualAsync() : CompletableFuture<String?> = EscopoSNV.chamadas.future {
+        obtemVersaoSnvAtual()
+    }
+
+
+
+
     /**
      * Retorna a versão do SNV para a data de referência especificada.
      * @param dataReferencia Data a ser consultada, no formato 'yyyy-MM-dd'
      * @return Versão do SNV encontrada ou null se não encontrada
      */
     @JvmStatic
-    fun obtemVersaoSnvBlocking(dataReferencia: String) : String? = runBlocking {
-        ClientSNVImplementation.obtemVersaoSnv(dataReferencia)
-    }
+    fun obtemVersaoSnvBlocking(dataReferencia: String) : String? =
+        bloqueante({ ClientSNVImplementation.obtemVersaoSnvBloqueante(dataReferencia) }) {
+            ClientSNVImplementation.obtemVersaoSnv(dataReferencia)
+        }
 
 
 
@@ -60,7 +394,25 @@ object ClientSNV {
 
 
     /**
-     * Retorna a lista de snvs próximo a coordenada informada
+     * Retorna a versão do SNV para a data de referência especificada, sem bloquear a thread chamadora.
+     * @param dataReferencia Data a ser consultada, no formato 'yyyy-MM-dd'
+     * @return Future com a versão do SNV encontrada ou null se não encontrada
+     */
+    @JvmStatic
+    fun obtemVersaoSnvAsync(dataReferencia: String) : CompletableFuture<String?> = EscopoSNV.chamadas.future {
+        obtemVersaoSnv(dataReferencia)
+    }
+
+
+
+
+    /**
+     * Retorna a lista de snvs próximo a coordenada informada.
+     * Com [buffersParalelos] maior que 1, os buffers são consultados em janelas simultâneas desse
+     * tamanho e vence o menor buffer com resultado (os demais são cancelados).
+     * @param timeoutTotalMs Prazo da chamada inteira (buffers, retries e requisições). Se as rotas já foram
+     * encontradas quando o prazo se esgota, retorna o resultado parcial (sem os trechos não obtidos);
+     * caso contrário lança [dnit.commons.exception.TempoEsgotadoException]. Se nulo, não há prazo total
      */
     @JvmStatic
     @JvmOverloads
@@ -75,7 +427,12 @@ object ClientSNV {
         retryCount: Int = 4,
         retryDelay: Long = 1_000L,
         bufferList: List<Double>? = null,
-    ) : List<SNVResponse> = runBlocking {
+        buffersParalelos: Int = 1,
+        timeoutTotalMs: Long? = null,
+    ) : List<SNVResponse> = bloqueante({
+        ClientSNVImplementation.obtemSnvsBloqueante(latitude, longitude, uf, br, dataReferencia, startBuffer, maxBuffer,
+                                                    retryCount, retryDelay, bufferList, buffersParalelos, timeoutTotalMs)
+    }) {
         ClientSNVImplementation.obtemSnvs(
             lat = latitude,
             lng = longitude,
@@ -87,6 +444,8 @@ object ClientSNV {
             retryCount = retryCount,
             retryDelayMs = retryDelay,
             bufferList = bufferList,
+            buffersParalelos = buffersParalelos,
+            timeoutTotalMs = timeoutTotalMs,
         )
     }
 
@@ -94,7 +453,12 @@ object ClientSNV {
 
 
     /**
-     * Retorna a lista de snvs próximo a coordenada informada
+     * Retorna a lista de snvs próximo a coordenada informada.
+     * Com [buffersParalelos] maior que 1, os buffers são consultados em janelas simultâneas desse
+     * tamanho e vence o menor buffer com resultado (os demais são cancelados).
+     * @param timeoutTotalMs Prazo da chamada inteira (buffers, retries e requisições). Se as rotas já foram
+     * encontradas quando o prazo se esgota, retorna o resultado parcial (sem os trechos não obtidos);
+     * caso contrário lança [dnit.commons.exception.TempoEsgotadoException]. Se nulo, não há prazo total
      */
     suspend fun obtemSNVs(
         latitude : Double,
@@ -107,6 +471,8 @@ object ClientSNV {
         retryCount: Int = 4,
         retryDelay: Long = 1_000L,
         bufferList: List<Double>? = null,
+        buffersParalelos: Int = 1,
+        timeoutTotalMs: Long? = null,
     ) : List<SNVResponse> {
         return ClientSNVImplementation.obtemSnvs(
             lat = latitude,
@@ -119,8 +485,405 @@ object ClientSNV {
             retryCount = retryCount,
             retryDelayMs = retryDelay,
             bufferList = bufferList,
+            buffersParalelos = buffersParalelos,
+            timeoutTotalMs = timeoutTotalMs,
         )
     }
 
 
+
+
+    /**
+     * Retorna a lista de snvs próximo a coordenada informada, sem bloquear a thread chamadora.
+     * Veja [obtemSNVs]. Cancelar o future cancela a consulta.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun obtemSNVsAsync(
+        latitude : Double,
+        longitude : Double,
+        dataReferencia: String? = null, // formato 'yyyy-MM-dd' (se nulo, é utilizado data de hoje)
+        uf : String? = null,
+        br : String? = null,
+        startBuffer: Double = 150.0,
+        maxBuffer: Double = 1_500.0,
+        retryCount: Int = 4,
+        retryDelay: Long = 1_000L,
+        bufferList: List<Double>? = null,
+        buffersParalelos: Int = 1,
+        timeoutTotalMs: Long? = null,
+    ) : CompletableFuture<List<SNVResponse>> = EscopoSNV.chamadas.future {
+        obtemSNVs(latitude, longitude, dataReferencia, uf, br, startBuffer, maxBuffer,
+                  retryCount, retryDelay, bufferList, buffersParalelos, timeoutTotalMs)
+    }
+
+
+
+
+    /**
+     * Retorna a lista de snvs próximo a cada coordenada do lote informado.
+     * As consultas são executadas em paralelo (limitadas por [paralelismo]) e o resultado
+     * respeita a ordem de entrada. Erros em uma coordenada não interrompem o lote.
+     * Veja [obtemSNVs] para o significado de [buffersParalelos].
+     * Com [configuraThreadsVirtuais] habilitado, cada coordenada é consultada em uma thread virtual.
+     * @param timeoutTotalMs Prazo do lote inteiro. Coordenadas não concluídas a tempo retornam
+     * [dnit.commons.exception.TempoEsgotadoException] como erro no seu resultado
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun obtemSNVsEmLoteBlocking(
+        coordenadas : List<Coordenada>,
+        dataReferencia: String? = null, // formato 'yyyy-MM-dd' (se nulo, é utilizado data de hoje)
+        uf : String? = null,
+        br : String? = null,
+        startBuffer: Double = 150.0,
+        maxBuffer: Double = 1_500.0,
+        retryCount: Int = 4,
+        retryDelay: Long = 1_000L,
+        bufferList: List<Double>? = null,
+        paralelismo: Int = 8,
+        buffersParalelos: Int = 1,
+        timeoutTotalMs: Long? = null,
+    ) : List<ResultadoLoteSNV> = bloqueante({
+        ClientSNVImplementation.obtemSnvsEmLoteBloqueante(coordenadas, uf, br, dataReferencia, startBuffer, maxBuffer,
+                                                          retryCount, retryDelay, bufferList, paralelismo,
+                                                          buffersParalelos, timeoutTotalMs)
+    }) {
+        obtemSNVsEmLote(
+            coordenadas = coordenadas,
+            dataReferencia = dataReferencia,
+            uf = uf,
+            br = br,
+            startBuffer = startBuffer,
+            maxBuffer = maxBuffer,
+            retryCount = retryCount,
+            retryDelay = retryDelay,
+            bufferList = bufferList,
+            paralelismo = paralelismo,
+            buffersParalelos = buffersParalelos,
+            timeoutTotalMs = timeoutTotalMs,
+        )
+    }
+
+
+
+
+    /**
+     * Retorna a lista de snvs próximo a cada coordenada do lote informado.
+     * As consultas são executadas em paralelo (limitadas por [paralelismo]) e o resultado
+     * respeita a ordem de entrada. Erros em uma coordenada não interrompem o lote.
+     * Veja [obtemSNVs] para o significado de [buffersParalelos].
+     * @param timeoutTotalMs Prazo do lote inteiro. Coordenadas não concluídas a tempo retornam
+     * [dnit.commons.exception.TempoEsgotadoException] como erro no seu resultado
+     */
+    suspend fun obtemSNVsEmLote(
+        coordenadas : List<Coordenada>,
+        dataReferencia: String? = null, // formato 'yyyy-MM-dd' (se nulo, é utilizado data de hoje)
+        uf : String? = null,
+        br : String? = null,
+        startBuffer: Double = 150.0,
+        maxBuffer: Double = 1_500.0,
+        retryCount: Int = 4,
+        retryDelay: Long = 1_000L,
+        bufferList: List<Double>? = null,
+        paralelismo: Int = 8,
+        buffersParalelos: Int = 1,
+        timeoutTotalMs: Long? = null,
+    ) : List<ResultadoLoteSNV> {
+        return ClientSNVImplementation.obtemSnvsEmLote(
+            coordenadas = coordenadas,
+            uf = uf,
+            br = br,
+            dataReferencia = dataReferencia,
+            startBuffer = startBuffer,
+            maxBuffer = maxBuffer,
+            retryCount = retryCount,
+            retryDelayMs = retryDelay,
+            bufferList = bufferList,
+            paralelismo = paralelismo,
+            buffersParalelos = buffersParalelos,
+            timeoutTotalMs = timeoutTotalMs,
+        )
+    }
+
+
+
+
+    /**
+     * Retorna a lista de snvs próximo a cada coordenada do lote informado, sem bloquear a thread chamadora.
+     * Veja [obtemSNVsEmLote]. Cancelar o future cancela as consultas em andamento.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun obtemSNVsEmLoteAsync(
+        coordenadas : List<Coordenada>,
+        dataReferencia: String? = null, // formato 'yyyy-MM-dd' (se nulo, é utilizado data de hoje)
+        uf : String? = null,
+        br : String? = null,
+        startBuffer: Double = 150.0,
+        maxBuffer: Double = 1_500.0,
+        retryCount: Int = 4,
+        retryDelay: Long = 1_000L,
+        bufferList: List<Double>? = null,
+        paralelismo: Int = 8,
+        buffersParalelos: Int = 1,
+        timeoutTotalMs: Long? = null,
+    ) : CompletableFuture<List<ResultadoLoteSNV>> = EscopoSNV.chamadas.future {
+        obtemSNVsEmLote(coordenadas, dataReferencia, uf, br, startBuffer, maxBuffer,
+                        retryCount, retryDelay, bufferList, paralelismo, buffersParalelos, timeoutTotalMs)
+    }
+
+
+
+
+    /**
+     * Enriquece um fluxo (possivelmente infinito) de coordenadas com os snvs próximos a cada uma.
+     * No máximo [concorrencia] coordenadas são consultadas ao mesmo tempo e novas coordenadas só são
+     * lidas quando há vaga, mantendo a memória limitada mesmo com um coletor lento (backpressure).
+     * Erros em uma coordenada são informados no seu resultado e não interrompem o fluxo.
+     * @param ordenado Se verdadeiro, os resultados são emitidos na ordem de entrada;
+     * caso contrário, à medida que ficam prontos
+     */
+    fun obtemSNVsFlow(
+        coordenadas : Flow<Coordenada>,
+        dataReferencia: String? = null, // formato 'yyyy-MM-dd' (se nulo, é utilizado data de cada consulta)
+        uf : String? = null,
+        br : String? = null,
+        startBuffer: Double = 150.0,
+        maxBuffer: Double = 1_500.0,
+        retryCount: Int = 4,
+        retryDelay: Long = 1_000L,
+        bufferList: List<Double>? = null,
+        concorrencia: Int = 8,
+        ordenado: Boolean = true,
+    ) : Flow<ResultadoLoteSNV> {
+        return ClientSNVImplementation.obtemSnvsFlow(
+            coordenadas = coordenadas,
+            uf = uf,
+            br = br,
+            dataReferencia = dataReferencia,
+            startBuffer = startBuffer,
+            maxBuffer = maxBuffer,
+            retryCount = retryCount,
+            retryDelayMs = retryDelay,
+            bufferList = bufferList,
+            concorrencia = concorrencia,
+            ordenado = ordenado,
+        )
+    }
+
+
+
+
+    /**
+     * Retorna a lista de snvs de cada ponto de um trajeto (coordenadas ordenadas, ex.: trilha de GPS).
+     * O ponto consultado na API-Geo passa a ser a âncora do trajeto. Os pontos seguintes a até
+     * [distanciaMaximaM] metros da âncora reaproveitam as suas rotas e trechos, sem novas consultas, enquanto
+     * os trechos em cache indicarem que o veículo não pode ter saído dos trechos da âncora.
+     * O km dos pontos reaproveitados é estimado projetando o deslocamento desde a âncora na direção do
+     * trajeto, conhecida a partir de duas âncoras na mesma rodovia; até lá, os pontos são consultados.
+     * O resultado respeita a ordem de entrada e erros em um ponto não interrompem o trajeto.
+     * @param timeoutTotalMs Prazo do trajeto inteiro. Pontos não concluídos a tempo retornam
+     * [dnit.commons.exception.TempoEsgotadoException] como erro no seu resultado
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun obtemSNVsTrajetoBlocking(
+        coordenadas : List<Coordenada>,
+        dataReferencia: String? = null, // formato 'yyyy-MM-dd' (se nulo, é utilizado data de hoje)
+        uf : String? = null,
+        br : String? = null,
+        startBuffer: Double = 150.0,
+        maxBuffer: Double = 1_500.0,
+        retryCount: Int = 4,
+        retryDelay: Long = 1_000L,
+        bufferList: List<Double>? = null,
+        distanciaMaximaM: Double = 200.0,
+        timeoutTotalMs: Long? = null,
+    ) : List<ResultadoLoteSNV> = bloqueante({
+        ClientSNVImplementation.obtemSnvsTrajetoBloqueante(coordenadas, uf, br, dataReferencia, startBuffer, maxBuffer,
+                                                           retryCount, retryDelay, bufferList, distanciaMaximaM,
+                                                           timeoutTotalMs)
+    }) {
+        obtemSNVsTrajeto(
+            coordenadas = coordenadas,
+            dataReferencia = dataReferencia,
+            uf = uf,
+            br = br,
+            startBuffer = startBuffer,
+            maxBuffer = maxBuffer,
+            retryCount = retryCount,
+            retryDelay = retryDelay,
+            bufferList = bufferList,
+            distanciaMaximaM = distanciaMaximaM,
+            timeoutTotalMs = timeoutTotalMs,
+        )
+    }
+
+
+
+
+    /**
+     * Retorna a lista de snvs de cada ponto de um trajeto (coordenadas ordenadas, ex.: trilha de GPS).
+     * O ponto consultado na API-Geo passa a ser a âncora do trajeto. Os pontos seguintes a até
+     * [distanciaMaximaM] metros da âncora reaproveitam as suas rotas e trechos, sem novas consultas, enquanto
+     * os trechos em cache indicarem que o veículo não pode ter saído dos trechos da âncora.
+     * O km dos pontos reaproveitados é estimado projetando o deslocamento desde a âncora na direção do
+     * trajeto, conhecida a partir de duas âncoras na mesma rodovia; até lá, os pontos são consultados.
+     * O resultado respeita a ordem de entrada e erros em um ponto não interrompem o trajeto.
+     * @param timeoutTotalMs Prazo do trajeto inteiro. Pontos não concluídos a tempo retornam
+     * [dnit.commons.exception.TempoEsgotadoException] como erro no seu resultado
+     */
+    suspend fun obtemSNVsTrajeto(
+        coordenadas : List<Coordenada>,
+        dataReferencia: String? = null, // formato 'yyyy-MM-dd' (se nulo, é utilizado data de hoje)
+        uf : String? = null,
+        br : String? = null,
+        startBuffer: Double = 150.0,
+        maxBuffer: Double = 1_500.0,
+        retryCount: Int = 4,
+        retryDelay: Long = 1_000L,
+        bufferList: List<Double>? = null,
+        distanciaMaximaM: Double = 200.0,
+        timeoutTotalMs: Long? = null,
+    ) : List<ResultadoLoteSNV> {
+        return ClientSNVImplementation.obtemSnvsTrajeto(
+            coordenadas = coordenadas,
+            uf = uf,
+            br = br,
+            dataReferencia = dataReferencia,
+            startBuffer = startBuffer,
+            maxBuffer = maxBuffer,
+            retryCount = retryCount,
+            retryDelayMs = retryDelay,
+            bufferList = bufferList,
+            distanciaMaximaM = distanciaMaximaM,
+            timeoutTotalMs = timeoutTotalMs,
+        )
+    }
+
+
+
+
+    /**
+     * Retorna a lista de snvs de cada ponto de um trajeto, sem bloquear a thread chamadora.
+     * Veja [obtemSNVsTrajeto]. Cancelar o future cancela as consultas em andamento.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun obtemSNVsTrajetoAsync(
+        coordenadas : List<Coordenada>,
+        dataReferencia: String? = null, // formato 'yyyy-MM-dd' (se nulo, é utilizado data de hoje)
+        uf : String? = null,
+        br : String? = null,
+        startBuffer: Double = 150.0,
+        maxBuffer: Double = 1_500.0,
+        retryCount: Int = 4,
+        retryDelay: Long = 1_000L,
+        bufferList: List<Double>? = null,
+        distanciaMaximaM: Double = 200.0,
+        timeoutTotalMs: Long? = null,
+    ) : CompletableFuture<List<ResultadoLoteSNV>> = EscopoSNV.chamadas.future {
+        obtemSNVsTrajeto(coordenadas, dataReferencia, uf, br, startBuffer, maxBuffer,
+                         retryCount, retryDelay, bufferList, distanciaMaximaM, timeoutTotalMs)
+    }
+
+
+
+
+    /**
+     * Carrega antecipadamente os trechos (tipo "B") de cada combinação de [ufs] e [brs] no cache de trechos,
+     * para que as consultas seguintes não aguardem a API-Geo. As buscas são executadas em paralelo
+     * (limitadas por [paralelismo]). Falhas em uma combinação não interrompem as demais.
+     * O cache de trechos (veja [configuraCacheTrechos]) deve comportar todas as combinações.
+     * As BRs são normalizadas para três dígitos (ex.: "10" e "BR-010" viram "010"); BRs inválidas lançam
+     * [dnit.commons.exception.CommonException].
+     * Com [configuraThreadsVirtuais] habilitado, cada combinação é carregada em uma thread virtual.
+     * @param progresso Notificado após cada combinação concluída
+     * @return Quantidade de combinações com trechos carregados
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun preaquecerCacheBlocking(
+        ufs : List<String>,
+        brs : List<String>,
+        dataReferencia: String? = null, // formato 'yyyy-MM-dd' (se nulo, é utilizado data de hoje)
+        paralelismo: Int = 8,
+        retryCount: Int = 4,
+        retryDelay: Long = 1_000L,
+        progresso: ProgressoPreaquecimento? = null,
+    ) : Int = bloqueante({
+        ClientSNVImplementation.preaquecerCacheBloqueante(ufs, brs, dataReferencia, paralelismo,
+                                                          retryCount, retryDelay, progresso)
+    }) {
+        preaquecerCache(ufs, brs, dataReferencia, paralelismo, retryCount, retryDelay, progresso)
+    }
+
+
+
+
+    /**
+     * Carrega antecipadamente os trechos (tipo "B") de cada combinação de [ufs] e [brs] no cache de trechos,
+     * para que as consultas seguintes não aguardem a API-Geo. As buscas são executadas em paralelo
+     * (limitadas por [paralelismo]). Falhas em uma combinação não interrompem as demais.
+     * O cache de trechos (veja [configuraCacheTrechos]) deve comportar todas as combinações.
+     * As BRs são normalizadas para três dígitos (ex.: "10" e "BR-010" viram "010"); BRs inválidas lançam
+     * [dnit.commons.exception.CommonException].
+     * @param progresso Notificado após cada combinação concluída
+     * @return Quantidade de combinações com trechos carregados
+     */
+    suspend fun preaquecerCache(
+        ufs : List<String>,
+        brs : List<String>,
+        dataReferencia: String? = null, // formato 'yyyy-MM-dd' (se nulo, é utilizado data de hoje)
+        paralelismo: Int = 8,
+        retryCount: Int = 4,
+        retryDelay: Long = 1_000L,
+        progresso: ProgressoPreaquecimento? = null,
+    ) : Int {
+        return ClientSNVImplementation.preaquecerCache(
+            ufs = ufs,
+            brs = brs,
+            dataReferencia = dataReferencia,
+            paralelismo = paralelismo,
+            retryCount = retryCount,
+            retryDelayMs = retryDelay,
+            progresso = progresso,
+        )
+    }
+
+
+
+
+    /**
+     * Carrega antecipadamente os trechos de cada combinação de [ufs] e [brs], sem bloquear a thread chamadora.
+     * Veja [preaquecerCache].
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun preaquecerCacheAsync(
+        ufs : List<String>,
+        brs : List<String>,
+        dataReferencia: String? = null, // formato 'yyyy-MM-dd' (se nulo, é utilizado data de hoje)
+        paralelismo: Int = 8,
+        retryCount: Int = 4,
+        retryDelay: Long = 1_000L,
+        progresso: ProgressoPreaquecimento? = null,
+    ) : CompletableFuture<Int> = EscopoSNV.chamadas.future {
+        preaquecerCache(ufs, brs, dataReferencia, paralelismo, retryCount, retryDelay, progresso)
+    }
+
+
+
+
+    /**
+     * Executa [block] bloqueando a thread chamadora. Com [configuraThreadsVirtuais] habilitado,
+     * executa a implementação bloqueante [direto], sem coroutines.
+     */
+    private inline fun <T> bloqueante(direto: () -> T, noinline block: suspend CoroutineScope.() -> T) : T {
+        if (ClientSNVImplementation.threadsVirtuais) return direto()
+        return runBlocking(block = block)
+    }
+
+
 }
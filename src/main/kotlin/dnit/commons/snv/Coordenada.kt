@@ -0,0 +1,13 @@
+package dnit.commons.snv
+
+
+/**
+ * Coordenada geográfica (WGS84) utilizada nas consultas de SNV.
+ *
+ * @property latitude Latitude em graus decimais
+ * @property longitude Longitude em graus decimais
+ */
+data class Coordenada(
+    val latitude : Double,
+    val longitude : Double,
+)
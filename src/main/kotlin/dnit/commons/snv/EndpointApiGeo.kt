@@ -0,0 +1,15 @@
+package dnit.commons.snv
+
+
+/**
+ * Endpoints da API-Geo utilizados pelo cliente SNV.
+ */
+enum class EndpointApiGeo {
+
+    /** Localiza as rotas (BR, UF e km) próximas a uma coordenada */
+    ROTAS,
+
+    /** Lista os trechos SNV de uma BR em uma UF */
+    TRECHOS,
+
+}
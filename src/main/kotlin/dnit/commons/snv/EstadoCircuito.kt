@@ -0,0 +1,18 @@
+package dnit.commons.snv
+
+
+/**
+ * Estado do circuit breaker que protege as chamadas à API-Geo.
+ */
+enum class EstadoCircuito {
+
+    /** Chamadas liberadas normalmente */
+    FECHADO,
+
+    /** API-Geo considerada indisponível: chamadas falham imediatamente */
+    ABERTO,
+
+    /** Período de teste: poucas chamadas são liberadas para verificar a recuperação */
+    SEMI_ABERTO,
+
+}
@@ -0,0 +1,27 @@
+package dnit.commons.snv
+
+
+/**
+ * Estatísticas de uso de um cache interno do cliente SNV.
+ *
+ * @property hits Quantidade de consultas atendidas pelo cache
+ * @property misses Quantidade de consultas não encontradas (ou expiradas) no cache
+ * @property evictions Quantidade de entradas removidas por falta de espaço
+ * @property tamanho Quantidade atual de entradas
+ * @property capacidade Quantidade máxima de entradas
+ */
+data class EstatisticasCache(
+    val hits : Long,
+    val misses : Long,
+    val evictions : Long,
+    val tamanho : Int,
+    val capacidade : Int,
+) {
+
+    /**
+     * Percentual de consultas atendidas pelo cache, entre 0 e 1
+     */
+    val taxaAcerto : Double
+        get() = if (hits + misses == 0L) 0.0 else hits.toDouble() / (hits + misses)
+
+}
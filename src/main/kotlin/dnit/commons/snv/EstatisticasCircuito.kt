@@ -0,0 +1,21 @@
+package dnit.commons.snv
+
+
+/**
+ * Situação atual do circuit breaker e do orçamento de retries da API-Geo.
+ *
+ * @property estado Estado atual do circuito
+ * @property falhasConsecutivas Falhas seguidas desde o último sucesso
+ * @property aberturas Quantidade de vezes que o circuito abriu
+ * @property rejeitadas Chamadas rejeitadas imediatamente por circuito aberto
+ * @property retriesNegados Retries não executados por falta de orçamento
+ * @property tokensRetry Orçamento de retries disponível no momento (infinito com o orçamento desabilitado)
+ */
+data class EstatisticasCircuito(
+    val estado : EstadoCircuito,
+    val falhasConsecutivas : Int,
+    val aberturas : Long,
+    val rejeitadas : Long,
+    val retriesNegados : Long,
+    val tokensRetry : Double,
+)
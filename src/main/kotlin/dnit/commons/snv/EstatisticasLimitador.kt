@@ -0,0 +1,21 @@
+package dnit.commons.snv
+
+
+/**
+ * Estatísticas do limitador de taxa e concorrência das chamadas à API-Geo.
+ *
+ * @property emEspera Chamadas aguardando vaga ou token no momento (tamanho da fila)
+ * @property emExecucao Chamadas em execução no momento
+ * @property admitidas Total de chamadas liberadas
+ * @property esperasExcedidas Chamadas que desistiram por exceder o tempo máximo de espera
+ * @property esperaMediaMs Tempo médio de espera das chamadas liberadas
+ * @property esperaMaximaMs Maior tempo de espera observado
+ */
+data class EstatisticasLimitador(
+    val emEspera : Int,
+    val emExecucao : Int,
+    val admitidas : Long,
+    val esperasExcedidas : Long,
+    val esperaMediaMs : Double,
+    val esperaMaximaMs : Double,
+)
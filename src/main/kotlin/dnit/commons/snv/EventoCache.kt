@@ -0,0 +1,16 @@
+package dnit.commons.snv
+
+
+/**
+ * Eventos reportados pelos caches internos do cliente SNV.
+ */
+enum class EventoCache {
+    HIT,
+    MISS,
+    EVICTION,
+
+    /**
+     * Valor expirado retornado enquanto é revalidado em segundo plano (acompanha um [HIT])
+     */
+    OBSOLETO,
+}
@@ -0,0 +1,45 @@
+package dnit.commons.snv
+
+
+/**
+ * Histograma de latências com limites fixos.
+ *
+ * @property limitesMs Limite superior (inclusivo) de cada faixa, em milissegundos
+ * @property contagens Quantidade de amostras por faixa. A última posição contém as amostras acima do maior limite
+ * @property total Quantidade total de amostras
+ * @property somaMs Soma das latências, em milissegundos
+ */
+data class HistogramaLatencia(
+    val limitesMs : List<Double>,
+    val contagens : List<Long>,
+    val total : Long,
+    val somaMs : Double,
+) {
+
+    /**
+     * Latência média, em milissegundos
+     */
+    val mediaMs : Double
+        get() = if (total == 0L) 0.0 else somaMs / total
+
+
+    /**
+     * Estimativa do percentil informado (entre 0 e 100), retornando o limite superior da faixa correspondente.
+     * Retorna [Double.POSITIVE_INFINITY] se o percentil cair acima do maior limite.
+     */
+    fun percentilMs(percentil : Double) : Double {
+        require(percentil in 0.0..100.0) { "Percentil deve estar entre 0 e 100" }
+        if (total == 0L) return 0.0
+
+        val alvo = Math.ceil(total * percentil / 100.0).toLong().coerceAtLeast(1)
+        var acumulado = 0L
+
+        for ((i, contagem) in contagens.withIndex()) {
+            acumulado += contagem
+            if (acumulado >= alvo) return limitesMs.getOrElse(i) { Double.POSITIVE_INFINITY }
+        }
+
+        return Double.POSITIVE_INFINITY
+    }
+
+}
@@ -0,0 +1,140 @@
+package dnit.commons.snv
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.LongAdder
+
+
+/**
+ * Implementação em memória de [MetricasSNVListener], com contadores sem lock.
+ * Mantém histogramas de latência e códigos HTTP por endpoint, retries, buffers consultados
+ * e vencedores, e eventos dos caches.
+ */
+class MetricasSNVEmMemoria : MetricasSNVListener {
+
+    private class Histograma {
+        val contagens = AtomicLongArray(LIMITES_MS.size + 1)
+        val total = LongAdder()
+        val somaNanos = LongAdder()
+    }
+
+    private val histogramas = EndpointApiGeo.entries.associateWith { Histograma() }
+    private val status = EndpointApiGeo.entries.associateWith { ConcurrentHashMap<Int, LongAdder>() }
+    private val retries = EndpointApiGeo.entries.associateWith { LongAdder() }
+    private val buffersConsultados = ConcurrentHashMap<Double, LongAdder>()
+    private val buffersVencedores = ConcurrentHashMap<Double, LongAdder>()
+    private val eventosCache = TipoCache.entries.associateWith {
+        EventoCache.entries.associateWith { LongAdder() }
+    }
+
+
+
+    override fun onRequisicao(endpoint : EndpointApiGeo, duracaoNanos : Long, status : Int) {
+        val histograma = histogramas.getValue(endpoint)
+        val duracaoMs = duracaoNanos / 1_000_000.0
+
+        var faixa = LIMITES_MS.size
+        for ((i, limite) in LIMITES_MS.withIndex()) {
+            if (duracaoMs <= limite) {
+                faixa = i
+                break
+            }
+        }
+
+        histograma.contagens.incrementAndGet(faixa)
+        histograma.total.increment()
+        histograma.somaNanos.add(duracaoNanos)
+        this.status.getValue(endpoint).computeIfAbsent(status) { LongAdder() }.increment()
+    }
+
+
+
+    override fun onRetry(endpoint : EndpointApiGeo) {
+        retries.getValue(endpoint).increment()
+    }
+
+
+
+    override fun onBuffer(buffer : Double, encontrou : Boolean) {
+        buffersConsultados.computeIfAbsent(buffer) { LongAdder() }.increment()
+        if (encontrou) buffersVencedores.computeIfAbsent(buffer) { LongAdder() }.increment()
+    }
+
+
+
+    override fun onCache(cache : TipoCache, evento : EventoCache) {
+        eventosCache.getValue(cache).getValue(evento).increment()
+    }
+
+
+
+    /**
+     * Histograma de latências das requisições ao endpoint
+     */
+    fun histograma(endpoint : EndpointApiGeo) : HistogramaLatencia {
+        val histograma = histogramas.getValue(endpoint)
+        return HistogramaLatencia(
+            limitesMs = LIMITES_MS,
+            contagens = List(histograma.contagens.length()) { histograma.contagens.get(it) },
+            total = histograma.total.sum(),
+            somaMs = histograma.somaNanos.sum() / 1_000_000.0,
+        )
+    }
+
+
+
+    /**
+     * Quantidade de respostas por código HTTP (-1 para falhas sem resposta)
+     */
+    fun statusPorCodigo(endpoint : EndpointApiGeo) : Map<Int, Long> {
+        return status.getValue(endpoint).mapValues { it.value.sum() }.toSortedMap()
+    }
+
+
+
+    fun retries(endpoint : EndpointApiGeo) : Long = retries.getValue(endpoint).sum()
+
+
+
+    /**
+     * Quantidade de consultas ao localizarkm por buffer (em metros)
+     */
+    fun buffersConsultados() : Map<Double, Long> = buffersConsultados.mapValues { it.value.sum() }.toSortedMap()
+
+
+
+    /**
+     * Quantidade de vezes que cada buffer (em metros) foi o primeiro a retornar rotas
+     */
+    fun buffersVencedores() : Map<Double, Long> = buffersVencedores.mapValues { it.value.sum() }.toSortedMap()
+
+
+
+    /**
+     * Consultas ao localizarkm que não retornaram rotas e levaram ao próximo buffer da sequência
+     */
+    fun escalonamentosBuffer() : Long {
+        return buffersConsultados.values.sumOf { it.sum() } - buffersVencedores.values.sumOf { it.sum() }
+    }
+
+
+
+    fun eventosCache(cache : TipoCache, evento : EventoCache) : Long {
+        return eventosCache.getValue(cache).getValue(evento).sum()
+    }
+
+
+
+    companion object {
+
+        /**
+         * Limites das faixas dos histogramas de latência, em milissegundos
+         */
+        @JvmField
+        val LIMITES_MS : List<Double> = listOf(
+            5.0, 10.0, 25.0, 50.0, 100.0, 250.0, 500.0,
+            1_000.0, 2_500.0, 5_000.0, 10_000.0, 30_000.0, 60_000.0,
+        )
+    }
+
+}
@@ -0,0 +1,41 @@
+package dnit.commons.snv
+
+
+/**
+ * Ponto de extensão para coletar métricas do cliente SNV.
+ * Os métodos são chamados de forma síncrona nas threads das consultas e devem ser rápidos
+ * (apenas contabilizar ou enfileirar). Todos possuem implementação vazia por padrão.
+ *
+ * Registre uma implementação com [ClientSNV.registraMetricas]. Veja [MetricasSNVEmMemoria].
+ */
+interface MetricasSNVListener {
+
+    /**
+     * Uma requisição HTTP à API-Geo foi concluída.
+     * @param endpoint Endpoint chamado
+     * @param duracaoNanos Duração da requisição, incluindo a leitura da resposta
+     * @param status Código HTTP da resposta, ou -1 se a requisição falhou sem resposta
+     */
+    fun onRequisicao(endpoint : EndpointApiGeo, duracaoNanos : Long, status : Int) { }
+
+
+    /**
+     * Uma chamada ao [endpoint] falhou e será repetida
+     */
+    fun onRetry(endpoint : EndpointApiGeo) { }
+
+
+    /**
+     * Um buffer da sequência do localizarkm foi consultado.
+     * @param buffer Buffer consultado, em metros
+     * @param encontrou Se o buffer retornou rotas (e portanto encerrou a sequência)
+     */
+    fun onBuffer(buffer : Double, encontrou : Boolean) { }
+
+
+    /**
+     * Um evento ocorreu em um dos caches internos
+     */
+    fun onCache(cache : TipoCache, evento : EventoCache) { }
+
+}
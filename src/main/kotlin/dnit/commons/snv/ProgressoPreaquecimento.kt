@@ -0,0 +1,17 @@
+package dnit.commons.snv
+
+
+/**
+ * Acompanha o progresso de [ClientSNV.preaquecerCache].
+ * Pode ser chamado a partir de várias threads simultaneamente.
+ */
+fun interface ProgressoPreaquecimento {
+
+    /**
+     * Chamado após a conclusão (com ou sem sucesso) de cada combinação de uf e br
+     * @param concluidos Quantidade de combinações concluídas até o momento
+     * @param total Quantidade total de combinações
+     */
+    fun onProgresso(concluidos : Int, total : Int)
+
+}
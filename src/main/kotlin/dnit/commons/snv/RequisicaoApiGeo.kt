@@ -0,0 +1,17 @@
+package dnit.commons.snv
+
+
+/**
+ * Requisição a um endpoint da API-Geo, independente do transporte utilizado.
+ *
+ * @property endpoint Endpoint consultado
+ * @property parametros Parâmetros da consulta (sem codificação de URL)
+ * @property cabecalhos Cabeçalhos adicionais da requisição
+ * @property timeoutMs Tempo máximo de espera pela resposta. Se nulo, é utilizado o padrão do transporte
+ */
+data class RequisicaoApiGeo @JvmOverloads constructor(
+    val endpoint : EndpointApiGeo,
+    val parametros : Map<String, String>,
+    val cabecalhos : Map<String, String> = emptyMap(),
+    val timeoutMs : Long? = null,
+)
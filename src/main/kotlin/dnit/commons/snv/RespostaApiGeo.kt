@@ -0,0 +1,32 @@
+package dnit.commons.snv
+
+import java.io.Closeable
+import java.io.InputStream
+
+
+/**
+ * Resposta de um [TransporteApiGeo]. O [corpo] deve ser fechado após a leitura.
+ *
+ * @property status Código HTTP da resposta
+ * @property corpo Corpo da resposta (JSON), já descompactado
+ */
+class RespostaApiGeo(
+    val status : Int,
+    cabecalhos : Map<String, String>,
+    val corpo : InputStream,
+) : Closeable {
+
+    private val cabecalhos : Map<String, String> = cabecalhos.mapKeys { it.key.lowercase() }
+
+
+    /**
+     * Retorna o valor do cabeçalho (sem diferenciar maiúsculas e minúsculas), ou null se ausente
+     */
+    fun cabecalho(nome : String) : String? = cabecalhos[nome.lowercase()]
+
+
+    override fun close() {
+        corpo.close()
+    }
+
+}
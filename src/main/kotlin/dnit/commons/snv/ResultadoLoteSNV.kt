@@ -0,0 +1,23 @@
+package dnit.commons.snv
+
+
+/**
+ * Resultado da consulta de SNV de uma coordenada pertencente a um lote.
+ *
+ * @property coordenada Coordenada consultada
+ * @property snvs SNVs encontrados para a coordenada (vazio em caso de erro)
+ * @property erro Erro ocorrido durante a consulta da coordenada, ou null se houve sucesso
+ */
+data class ResultadoLoteSNV(
+    val coordenada : Coordenada,
+    val snvs : List<SNVResponse>,
+    val erro : Throwable? = null,
+) {
+
+    /**
+     * Indica se a consulta da coordenada foi realizada sem erros
+     */
+    val sucesso : Boolean
+        get() = erro == null
+
+}
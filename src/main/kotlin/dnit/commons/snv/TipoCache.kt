@@ -0,0 +1,15 @@
+package dnit.commons.snv
+
+
+/**
+ * Caches internos do cliente SNV que reportam métricas.
+ */
+enum class TipoCache {
+
+    /** Cache de trechos por uf, br, tipo e data */
+    TRECHOS,
+
+    /** Cache de respostas por coordenada aproximada */
+    RESPOSTAS,
+
+}
@@ -0,0 +1,36 @@
+package dnit.commons.snv
+
+import java.util.concurrent.CompletableFuture
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.IO
+import kotlinx.coroutines.asExecutor
+
+
+/**
+ * Transporte utilizado pelo cliente SNV para executar as requisições à API-Geo.
+ * Permite substituir o serviço do DNIT por um espelho local ou por respostas gravadas
+ * (testes de carga e benchmarks offline). Configure com [ClientSNV.configuraTransporte].
+ *
+ * Basta implementar [executaBloqueante] (inclusive em Java); [executaAsync] pode ser sobrescrito
+ * por transportes que não precisam ocupar uma thread durante a requisição.
+ *
+ * Implementações disponíveis: [TransporteHttpApiGeo], [TransporteLocalApiGeo] e [TransporteGravacaoApiGeo].
+ */
+interface TransporteApiGeo {
+
+    /**
+     * Executa a requisição bloqueando a thread atual até o recebimento da resposta
+     */
+    fun executaBloqueante(requisicao : RequisicaoApiGeo) : RespostaApiGeo
+
+
+    /**
+     * Executa a requisição sem bloquear a thread chamadora.
+     * Por padrão executa [executaBloqueante] no pool de I/O do cliente. O futuro pode ser cancelado
+     * quando a resposta deixa de ser necessária (ex.: prazo esgotado ou buffer descartado).
+     */
+    fun executaAsync(requisicao : RequisicaoApiGeo) : CompletableFuture<RespostaApiGeo> {
+        return CompletableFuture.supplyAsync({ executaBloqueante(requisicao) }, Dispatchers.IO.asExecutor())
+    }
+
+}
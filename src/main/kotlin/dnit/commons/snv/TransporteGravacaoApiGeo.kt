@@ -0,0 +1,44 @@
+package dnit.commons.snv
+
+import dnit.commons.snv.impl.FixturesApiGeo
+import java.io.ByteArrayInputStream
+import java.net.HttpURLConnection
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.CompletableFuture
+
+
+/**
+ * Transporte que repassa as requisições para [delegado] e grava as respostas de sucesso
+ * como fixtures em [diretorio], no formato lido por [TransporteLocalApiGeo].
+ */
+class TransporteGravacaoApiGeo(
+    private val delegado : TransporteApiGeo,
+    private val diretorio : Path,
+) : TransporteApiGeo {
+
+    override fun executaBloqueante(requisicao : RequisicaoApiGeo) : RespostaApiGeo {
+        return grava(requisicao, delegado.executaBloqueante(requisicao))
+    }
+
+
+
+    override fun executaAsync(requisicao : RequisicaoApiGeo) : CompletableFuture<RespostaApiGeo> {
+        return delegado.executaAsync(requisicao).thenApply { grava(requisicao, it) }
+    }
+
+
+
+    private fun grava(requisicao : RequisicaoApiGeo, resposta : RespostaApiGeo) : RespostaApiGeo {
+        if (resposta.status != HttpURLConnection.HTTP_OK) return resposta
+
+        val corpo = resposta.use { it.corpo.readBytes() }
+        val arquivo = FixturesApiGeo.caminhos(diretorio, requisicao).first()
+
+        Files.createDirectories(arquivo.parent)
+        Files.write(arquivo, corpo)
+
+        return RespostaApiGeo(resposta.status, mapOf("Content-Type" to "application/json"), ByteArrayInputStream(corpo))
+    }
+
+}
@@ -0,0 +1,183 @@
+package dnit.commons.snv
+
+import dnit.commons.snv.impl.DescompressaoHttp
+import java.io.ByteArrayInputStream
+import java.net.URI
+import java.net.URLEncoder
+import java.net.http.HttpClient
+import java.net.http.HttpRequest
+import java.net.http.HttpResponse
+import java.net.http.HttpTimeoutException
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ScheduledThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+
+
+/**
+ * Transporte HTTP da API-Geo.
+ * Utiliza um único [HttpClient] (keep-alive e HTTP/2) e não ocupa threads durante a requisição em [executaAsync].
+ * O corpo é recebido por completo dentro do timeout da requisição, de modo que um servidor que
+ * interrompe o envio no meio do corpo não retém a thread de leitura.
+ * Com [compressao] habilitada, solicita respostas gzip/deflate e as descompacta durante a leitura.
+ *
+ * @param baseUrl Endereço base da API-Geo (ex.: um espelho on-premise)
+ * @param connectionTimeoutMs Tempo máximo para estabelecer a conexão
+ * @param readTimeoutMs Tempo máximo para receber a resposta completa (cabeçalhos e corpo),
+ * quando a requisição não define um
+ * @param compressao Envia Accept-Encoding e descompacta as respostas
+ */
+class TransporteHttpApiGeo @JvmOverloads constructor(
+    private val baseUrl : String = URL_PADRAO,
+    private val connectionTimeoutMs : Long = 15_000L,
+    private val readTimeoutMs : Long = 30_000L,
+    private val compressao : Boolean = true,
+) : TransporteApiGeo {
+
+    private val httpClient : HttpClient
+
+
+    init {
+        require(baseUrl.isNotBlank()) { "URL base deve ser preenchida" }
+        require(connectionTimeoutMs > 0) { "Timeout de conexão deve ser positivo" }
+        require(readTimeoutMs > 0) { "Timeout de leitura deve ser positivo" }
+
+        httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Duration.ofMillis(connectionTimeoutMs))
+            .build()
+    }
+
+
+
+    override fun executaBloqueante(requisicao : RequisicaoApiGeo) : RespostaApiGeo {
+        val resposta = executaAsync(requisicao)
+
+        try {
+            return resposta.get()
+
+        } catch (e : ExecutionException) {
+            throw e.cause ?: e
+
+        } catch (e : InterruptedException) {
+            resposta.cancel(true)
+            throw e
+        }
+    }
+
+
+
+    /**
+     * Envia a requisição recebendo o corpo inteiro. O timeout da requisição limita apenas a espera pelos
+     * cabeçalhos, por isso o recebimento completo é limitado ao mesmo tempo. Ao esgotá-lo (ou com o
+     * cancelamento do futuro retornado) a troca é cancelada.
+     */
+    override fun executaAsync(requisicao : RequisicaoApiGeo) : CompletableFuture<RespostaApiGeo> {
+        val envio = httpClient.sendAsync(toHttpRequest(requisicao), HttpResponse.BodyHandlers.ofByteArray())
+        val resposta = CompletableFuture<RespostaApiGeo>()
+
+        envio.whenComplete { response, erro ->
+            try {
+                if (erro != null) resposta.completeExceptionally((erro as? CompletionException)?.cause ?: erro)
+                else resposta.complete(toResposta(response))
+            } catch (e : Exception) {
+                resposta.completeExceptionally(e)
+            }
+        }
+
+        val timeoutMs = timeout(requisicao)
+        val agendamento = ESCALONADOR_TIMEOUT.schedule({
+            resposta.completeExceptionally(HttpTimeoutException("Resposta não recebida em $timeoutMs ms"))
+        }, timeoutMs, TimeUnit.MILLISECONDS)
+
+        resposta.whenComplete { _, erro ->
+            agendamento.cancel(false)
+            if (erro != null) envio.cancel(true)
+        }
+        return resposta
+    }
+
+
+
+    /**
+     * URL completa da requisição
+     */
+    fun url(requisicao : RequisicaoApiGeo) : String {
+        val queryString = requisicao.parametros.entries.joinToString("&") {
+            "${it.key}=${URLEncoder.encode(it.value, "UTF-8")}"
+        }
+        return "${baseUrl.trimEnd('/')}${caminho(requisicao.endpoint)}?$queryString"
+    }
+
+
+
+    private fun timeout(requisicao : RequisicaoApiGeo) : Long = requisicao.timeoutMs ?: readTimeoutMs
+
+
+
+    private fun toHttpRequest(requisicao : RequisicaoApiGeo) : HttpRequest {
+        val builder = HttpRequest.newBuilder(URI(url(requisicao)))
+            .GET()
+            .header("Accept", "application/json")
+            .timeout(Duration.ofMillis(timeout(requisicao)))
+
+        if (compressao) builder.header("Accept-Encoding", DescompressaoHttp.CODIFICACOES_ACEITAS)
+
+        requisicao.cabecalhos.forEach { (nome, valor) -> builder.setHeader(nome, valor) }
+
+        return builder.build()
+    }
+
+
+
+    private fun toResposta(response : HttpResponse<ByteArray>) : RespostaApiGeo {
+        val cabecalhos = response.headers().map()
+            .filterValues { it.isNotEmpty() }
+            .mapValues { it.value.first() }
+        val bytes = response.body()
+        val corpo = ByteArrayInputStream(bytes)
+
+        // Respostas sem corpo (ex.: 304) ou de erro podem repetir o Content-Encoding sem conteúdo compactado
+        val contentEncoding = response.headers().firstValue("Content-Encoding").orElse(null)
+            ?.takeIf { response.statusCode() in 200..299 && bytes.isNotEmpty() }
+            ?: return RespostaApiGeo(response.statusCode(), cabecalhos, corpo)
+
+        // O corpo repassado já está descompactado, por isso os cabeçalhos de codificação são descartados
+        return RespostaApiGeo(
+            response.statusCode(),
+            cabecalhos.filterKeys { !it.equals("Content-Encoding", true) && !it.equals("Content-Length", true) },
+            DescompressaoHttp.descompacta(corpo, contentEncoding),
+        )
+    }
+
+
+
+    private fun caminho(endpoint : EndpointApiGeo) : String {
+        return when (endpoint) {
+            EndpointApiGeo.ROTAS -> "/rotas/localizarkm"
+            EndpointApiGeo.TRECHOS -> "/snv/trechos"
+        }
+    }
+
+
+
+    companion object {
+
+        /**
+         * Endereço da API-Geo do DNIT
+         */
+        const val URL_PADRAO = "https://servicos.dnit.gov.br/sgplan/apigeo"
+
+        /**
+         * Agenda o timeout de recebimento das respostas. Timeouts cancelados são removidos da fila
+         * para não reter as respostas já recebidas.
+         */
+        private val ESCALONADOR_TIMEOUT = ScheduledThreadPoolExecutor(1) { tarefa ->
+            Thread(tarefa, "snv-http-timeout").apply { isDaemon = true }
+        }.apply { removeOnCancelPolicy = true }
+    }
+
+}
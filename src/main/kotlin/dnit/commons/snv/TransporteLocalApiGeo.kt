@@ -0,0 +1,66 @@
+package dnit.commons.snv
+
+import dnit.commons.snv.impl.FixturesApiGeo
+import java.io.ByteArrayInputStream
+import java.net.HttpURLConnection
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Instant
+import java.time.ZoneOffset
+import java.time.format.DateTimeFormatter
+import java.time.format.DateTimeParseException
+import java.time.temporal.ChronoUnit
+
+
+/**
+ * Transporte que responde a partir de arquivos JSON gravados (fixtures), sem acesso à rede.
+ * Útil para medir a vazão do cliente SNV offline e para testes.
+ *
+ * Cada requisição procura, em ordem, o arquivo mais específico disponível:
+ * - `rotas/{lat}_{lng}_{r}_{data}.json`, `rotas/{lat}_{lng}_{r}.json`, `rotas/{lat}_{lng}.json`
+ * - `trechos/{uf}_{br}_{tipo}_{data}.json`, `trechos/{uf}_{br}_{tipo}.json`
+ *
+ * Requisições sem arquivo correspondente recebem 404. A data de modificação do arquivo é informada em
+ * Last-Modified e requisições condicionais (If-Modified-Since) recebem 304 quando o arquivo não foi alterado.
+ * Os arquivos podem ser gerados com [TransporteGravacaoApiGeo].
+ *
+ * @param diretorio Diretório raiz das fixtures
+ */
+class TransporteLocalApiGeo(
+    private val diretorio : Path,
+) : TransporteApiGeo {
+
+    override fun executaBloqueante(requisicao : RequisicaoApiGeo) : RespostaApiGeo {
+        val arquivo = FixturesApiGeo.caminhos(diretorio, requisicao).firstOrNull { Files.isRegularFile(it) }
+            ?: return RespostaApiGeo(HttpURLConnection.HTTP_NOT_FOUND, emptyMap(), ByteArrayInputStream(ByteArray(0)))
+
+        val modificadoEm = Files.getLastModifiedTime(arquivo).toInstant().truncatedTo(ChronoUnit.SECONDS)
+        val cabecalhos = mapOf(
+            "Content-Type" to "application/json",
+            "Last-Modified" to DateTimeFormatter.RFC_1123_DATE_TIME.format(modificadoEm.atOffset(ZoneOffset.UTC)),
+        )
+
+        val desde = ifModifiedSince(requisicao)
+        if (desde != null && !modificadoEm.isAfter(desde)) {
+            return RespostaApiGeo(HttpURLConnection.HTTP_NOT_MODIFIED, cabecalhos, ByteArrayInputStream(ByteArray(0)))
+        }
+
+        return RespostaApiGeo(HttpURLConnection.HTTP_OK, cabecalhos, Files.newInputStream(arquivo))
+    }
+
+
+
+    private fun ifModifiedSince(requisicao : RequisicaoApiGeo) : Instant? {
+        val valor = requisicao.cabecalhos.entries
+            .firstOrNull { it.key.equals("If-Modified-Since", true) }
+            ?.value
+            ?: return null
+
+        return try {
+            Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(valor))
+        } catch (e : DateTimeParseException) {
+            null
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.model.internal.MiniTrechoSNV
+import dnit.commons.model.internal.RotaSNV
+import java.io.InputStream
+import java.io.InputStreamReader
+import java.io.Reader
+
+/**
+ * Converte as respostas da API-Geo diretamente para [MiniTrechoSNV] e [RotaSNV],
+ * lendo o corpo da resposta em um único passo através do [JsonStreamReader].
+ * Feito sem bibliotecas externas para evitar conflitos de dependências nos projetos clientes.
+ */
+internal object ApiGeoJsonParser {
+
+    internal fun parseTrechos(input : InputStream) : List<MiniTrechoSNV> {
+        return parseTrechos(InputStreamReader(input, Charsets.UTF_8))
+    }
+
+
+
+    internal fun parseRotas(input : InputStream) : List<RotaSNV> {
+        return parseRotas(InputStreamReader(input, Charsets.UTF_8))
+    }
+
+
+
+    /**
+     * Espera um objeto contendo o campo "trechos" (array). Demais campos são ignorados.
+     */
+    internal fun parseTrechos(reader : Reader) : List<MiniTrechoSNV> {
+        JsonStreamReader(reader).use { json ->
+            if (json.peek() != JsonStreamReader.Token.BEGIN_OBJECT) return emptyList()
+
+            var trechos : List<MiniTrechoSNV> = emptyList()
+
+            json.beginObject()
+            while (json.hasNext()) {
+                if (json.nextName() == "trechos" && json.peek() == JsonStreamReader.Token.BEGIN_ARRAY) {
+                    trechos = readTrechosArray(json)
+                } else {
+                    json.skipValue()
+                }
+            }
+            json.endObject()
+
+            return trechos
+        }
+    }
+
+
+
+    /**
+     * Aceita tanto um array de rotas quanto uma única rota.
+     */
+    internal fun parseRotas(reader : Reader) : List<RotaSNV> {
+        JsonStreamReader(reader).use { json ->
+            return when (json.peek()) {
+                JsonStreamReader.Token.BEGIN_ARRAY -> {
+                    val rotas = mutableListOf<RotaSNV>()
+                    json.beginArray()
+                    while (json.hasNext()) {
+                        if (json.peek() == JsonStreamReader.Token.BEGIN_OBJECT) {
+                            rotas.add(readRota(json))
+                        } else {
+                            json.skipValue()
+                        }
+                    }
+                    json.endArray()
+                    rotas
+                }
+
+                JsonStreamReader.Token.BEGIN_OBJECT -> listOf(readRota(json))
+
+                else -> emptyList()
+            }
+        }
+    }
+
+
+
+    private fun readTrechosArray(json : JsonStreamReader) : List<MiniTrechoSNV> {
+        val trechos = mutableListOf<MiniTrechoSNV>()
+
+        json.beginArray()
+        while (json.hasNext()) {
+            if (json.peek() == JsonStreamReader.Token.BEGIN_OBJECT) {
+                readTrecho(json)?.let { trechos.add(it) }
+            } else {
+                json.skipValue()
+            }
+        }
+        json.endArray()
+
+        return trechos
+    }
+
+
+
+    private fun readTrecho(json : JsonStreamReader) : MiniTrechoSNV? {
+        var trecho : String? = null
+        var extensao : Double? = null
+        var coincidencia : String? = null
+
+        json.beginObject()
+        while (json.hasNext()) {
+            when (json.nextName()) {
+                "trecho" -> trecho = json.nextScalarOrNull() ?: TRECHO_SEM_CODIGO
+                "extensao" -> extensao = json.nextScalarOrNull()?.toDoubleOrNull()
+                "coincidencia" -> coincidencia = json.nextScalarOrNull()?.takeIf { it != "null" }
+                else -> json.skipValue()
+            }
+        }
+        json.endObject()
+
+        // Trechos sem código (null) são mantidos: sua extensão compõe o km acumulado dos seguintes
+        if (trecho == null || extensao == null) return null
+
+        return MiniTrechoSNV(
+            trecho = trecho,
+            extensao = extensao,
+            coincidencia = coincidencia
+        )
+    }
+
+
+
+    private fun readRota(json : JsonStreamReader) : RotaSNV {
+        var id : String? = null
+        var idTrecho : String? = null
+        var br : String? = null
+        var uf : String? = null
+        var km : Double? = null
+        var lat : String? = null
+        var lng : String? = null
+        var versao : String? = null
+        var sgTpTrecho : String? = null
+
+        json.beginObject()
+        while (json.hasNext()) {
+            when (json.nextName()) {
+                "id" -> id = json.nextScalarOrNull()
+                "idTrecho" -> idTrecho = json.nextScalarOrNull()
+                "br" -> br = json.nextScalarOrNull()
+                "uf" -> uf = json.nextScalarOrNull()
+                "km" -> km = json.nextScalarOrNull()?.toDoubleOrNull()
+                "lat" -> lat = json.nextScalarOrNull()
+                "lng" -> lng = json.nextScalarOrNull()
+                "versao" -> versao = json.nextScalarOrNull()
+                "sg_tp_trecho" -> sgTpTrecho = json.nextScalarOrNull()
+                else -> json.skipValue()
+            }
+        }
+        json.endObject()
+
+        return RotaSNV(
+            id = id,
+            idTrecho = idTrecho,
+            br = br ?: "",
+            uf = uf ?: "",
+            km = km ?: -1.0,
+            lat = lat,
+            lng = lng,
+            versao = versao,
+            sgTpTrecho = sgTpTrecho ?: "B",
+        )
+    }
+
+
+
+    /**
+     * Código atribuído aos trechos retornados com "trecho": null
+     */
+    private const val TRECHO_SEM_CODIGO = "null"
+
+}
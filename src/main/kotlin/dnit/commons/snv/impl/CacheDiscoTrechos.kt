@@ -0,0 +1,253 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.exception.CommonException
+import dnit.commons.model.internal.MiniTrechoSNV
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.IOException
+import java.nio.BufferUnderflowException
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+
+/**
+ * Segundo nível do cache de trechos, persistido em disco para sobreviver a reinicializações.
+ * Cada lista de trechos é gravada em um arquivo binário compacto por (uf, br, tipo, versão)
+ * e lida de uma vez para a memória. Como os trechos de uma versão do SNV não mudam,
+ * as entradas não expiram.
+ *
+ * Formato de cada arquivo: `SNVT`, versão do formato, quantidade de trechos e, para cada trecho,
+ * a extensão (double), o código e a coincidência (tamanho em bytes seguido do UTF-8; -1 para nulo).
+ *
+ * @param diretorio Diretório dos arquivos (criado se não existir)
+ */
+internal class CacheDiscoTrechos(
+    private val diretorio : Path,
+) {
+
+    init {
+        try {
+            Files.createDirectories(diretorio)
+        } catch (e : IOException) {
+            throw CommonException("Erro ao criar diretório do cache de trechos $diretorio", e)
+        }
+    }
+
+
+
+    /**
+     * Lê os trechos gravados, ou retorna null se não houver arquivo válido para a chave
+     */
+    internal fun le(uf : String, br : String, tipo : String, versao : String) : List<MiniTrechoSNV>? {
+        val arquivo = diretorio.resolve(nomeArquivo(uf, br, tipo, versao))
+        if (!Files.isRegularFile(arquivo)) return null
+
+        return try {
+            // Os arquivos são pequenos: a leitura direta evita mapeamentos retidos até a coleta do buffer
+            if (Files.size(arquivo) > TAMANHO_MAXIMO_ARQUIVO) return null
+            decodifica(ByteBuffer.wrap(Files.readAllBytes(arquivo)))
+
+        } catch (e : IOException) {
+            null
+        } catch (e : BufferUnderflowException) {
+            null // Arquivo truncado, será substituído na próxima gravação
+        }
+    }
+
+
+
+    internal fun grava(uf : String, br : String, tipo : String, versao : String, trechos : List<MiniTrechoSNV>) {
+        gravaArquivo(nomeArquivo(uf, br, tipo, versao), codifica(trechos))
+    }
+
+
+
+    /**
+     * Exporta todos os arquivos do cache para um único snapshot.
+     * @return Quantidade de listas de trechos exportadas
+     */
+    internal fun exportaSnapshot(destino : Path) : Int {
+        try {
+            val arquivos = Files.list(diretorio).use { stream ->
+                stream.filter { it.fileName.toString().endsWith(EXTENSAO) }.sorted().toList()
+            }
+
+            destino.parent?.let { Files.createDirectories(it) }
+            val temporario = destino.resolveSibling("${destino.fileName}.tmp")
+
+            DataOutputStream(BufferedOutputStream(Files.newOutputStream(temporario))).use { out ->
+                out.writeInt(MAGIC_SNAPSHOT)
+                out.writeShort(VERSAO_FORMATO)
+                out.writeInt(arquivos.size)
+
+                for (arquivo in arquivos) {
+                    val conteudo = Files.readAllBytes(arquivo)
+                    out.writeUTF(arquivo.fileName.toString())
+                    out.writeInt(conteudo.size)
+                    out.write(conteudo)
+                }
+            }
+
+            Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING)
+            return arquivos.size
+
+        } catch (e : IOException) {
+            throw CommonException("Erro ao exportar snapshot de trechos para $destino", e)
+        }
+    }
+
+
+
+    /**
+     * Importa um snapshot gerado por [exportaSnapshot], substituindo os arquivos de mesma chave.
+     * @return Quantidade de listas de trechos importadas
+     */
+    internal fun importaSnapshot(origem : Path) : Int {
+        try {
+            DataInputStream(Files.newInputStream(origem).buffered()).use { input ->
+                if (input.readInt() != MAGIC_SNAPSHOT || input.readShort().toInt() != VERSAO_FORMATO) {
+                    throw CommonException("Snapshot de trechos inválido: $origem")
+                }
+
+                // Os tamanhos lidos do arquivo são limitados antes de qualquer alocação
+                val tamanhoSnapshot = Files.size(origem)
+                val quantidade = input.readInt()
+                if (quantidade < 0 || quantidade > tamanhoSnapshot / ENTRADA_MINIMA_BYTES) {
+                    throw CommonException("Snapshot de trechos inválido: $origem")
+                }
+
+                repeat(quantidade) {
+                    val nome = input.readUTF()
+                    val tamanho = input.readInt()
+                    if (tamanho < CABECALHO_BYTES || tamanho > minOf(TAMANHO_MAXIMO_ARQUIVO, tamanhoSnapshot)) {
+                        throw CommonException("Snapshot de trechos inválido: entrada $nome")
+                    }
+
+                    val conteudo = ByteArray(tamanho)
+                    input.readFully(conteudo)
+
+                    // Valida o nome e o conteúdo antes de gravar
+                    if (!nome.endsWith(EXTENSAO) || Path.of(nome).nameCount != 1 || nome.contains("..")) {
+                        throw CommonException("Snapshot de trechos inválido: entrada $nome")
+                    }
+                    decodifica(ByteBuffer.wrap(conteudo)) ?: throw CommonException("Snapshot de trechos inválido: entrada $nome")
+
+                    gravaArquivo(nome, conteudo)
+                }
+
+                return quantidade
+            }
+
+        } catch (e : EOFException) {
+            throw CommonException("Snapshot de trechos truncado: $origem", e)
+        } catch (e : BufferUnderflowException) {
+            throw CommonException("Snapshot de trechos inválido: $origem", e)
+        } catch (e : IOException) {
+            throw CommonException("Erro ao importar snapshot de trechos de $origem", e)
+        }
+    }
+
+
+
+    private fun gravaArquivo(nome : String, conteudo : ByteArray) {
+        val destino = diretorio.resolve(nome)
+
+        try {
+            val temporario = Files.createTempFile(diretorio, nome, ".tmp")
+            Files.write(temporario, conteudo)
+            Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING)
+
+        } catch (e : IOException) {
+            throw CommonException("Erro ao gravar trechos em $destino", e)
+        }
+    }
+
+
+
+    private fun codifica(trechos : List<MiniTrechoSNV>) : ByteArray {
+        val textos = trechos.map { it.trecho.toByteArray(Charsets.UTF_8) to it.coincidencia?.toByteArray(Charsets.UTF_8) }
+        val tamanho = CABECALHO_BYTES + textos.sumOf { (trecho, coincidencia) ->
+            8 + 4 + trecho.size + 4 + (coincidencia?.size ?: 0)
+        }
+
+        val buffer = ByteBuffer.allocate(tamanho)
+        buffer.putInt(MAGIC_TRECHOS)
+        buffer.putShort(VERSAO_FORMATO.toShort())
+        buffer.putInt(trechos.size)
+
+        trechos.forEachIndexed { i, trecho ->
+            val (codigo, coincidencia) = textos[i]
+            buffer.putDouble(trecho.extensao)
+            buffer.putInt(codigo.size)
+            buffer.put(codigo)
+            buffer.putInt(coincidencia?.size ?: -1)
+            coincidencia?.let { buffer.put(it) }
+        }
+
+        return buffer.array()
+    }
+
+
+
+    /**
+     * Retorna null se o conteúdo não estiver no formato esperado
+     */
+    private fun decodifica(buffer : ByteBuffer) : List<MiniTrechoSNV>? {
+        if (buffer.remaining() < CABECALHO_BYTES) return null
+        if (buffer.getInt() != MAGIC_TRECHOS || buffer.getShort().toInt() != VERSAO_FORMATO) return null
+
+        val quantidade = buffer.getInt()
+        if (quantidade < 0 || quantidade > buffer.remaining() / TRECHO_MINIMO_BYTES) return null
+
+        val trechos = ArrayList<MiniTrechoSNV>(quantidade)
+        repeat(quantidade) {
+            val extensao = buffer.getDouble()
+            val trecho = leTexto(buffer) ?: return null
+            val coincidencia = leTexto(buffer)
+            trechos.add(MiniTrechoSNV(trecho = trecho, extensao = extensao, coincidencia = coincidencia))
+        }
+
+        return trechos
+    }
+
+
+
+    private fun leTexto(buffer : ByteBuffer) : String? {
+        val tamanho = buffer.getInt()
+        if (tamanho < 0) return null
+        if (tamanho > buffer.remaining()) throw BufferUnderflowException()
+
+        val bytes = ByteArray(tamanho)
+        buffer.get(bytes)
+        return String(bytes, Charsets.UTF_8)
+    }
+
+
+
+    private fun nomeArquivo(uf : String, br : String, tipo : String, versao : String) : String {
+        return listOf(uf, br, tipo, versao).joinToString("_") {
+            it.uppercase().replace(Regex("[^A-Z0-9.\\-]"), "_")
+        } + EXTENSAO
+    }
+
+
+
+    private companion object {
+        const val EXTENSAO = ".snvt"
+        const val MAGIC_TRECHOS = 0x534E5654 // "SNVT"
+        const val MAGIC_SNAPSHOT = 0x534E5653 // "SNVS"
+        const val VERSAO_FORMATO = 1
+        const val CABECALHO_BYTES = 4 + 2 + 4
+        const val TRECHO_MINIMO_BYTES = 8 + 4 + 4 // Extensão, código vazio e coincidência nula
+        const val ENTRADA_MINIMA_BYTES = 2 + 4 + CABECALHO_BYTES // Nome vazio, tamanho e lista vazia
+
+        /**
+         * Maior arquivo aceito na leitura e na importação (uma BR possui no máximo alguns milhares de trechos)
+         */
+        const val TAMANHO_MAXIMO_ARQUIVO = 16L * 1024 * 1024
+    }
+
+}
@@ -0,0 +1,275 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.snv.EstatisticasCache
+import dnit.commons.snv.EventoCache
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.launch
+import kotlin.coroutines.cancellation.CancellationException
+
+/**
+ * Cache LRU limitado, com expiração opcional (TTL) e deduplicação de cargas concorrentes.
+ * Operações sobre o mapa são curtas e protegidas por um único lock; a carga dos valores
+ * é feita fora do lock através do [SingleFlight].
+ *
+ * Com [maxObsoletoMs] (stale-while-revalidate), uma entrada expirada há menos de [maxObsoletoMs]
+ * é retornada imediatamente enquanto uma única revalidação é executada em [escopoRevalidacao].
+ *
+ * @param maxItems Quantidade máxima de entradas mantidas em memória
+ * @param ttlMs Tempo de vida de cada entrada. Se nulo as entradas não expiram
+ * @param relogio Fonte de tempo em nanossegundos (substituível em testes)
+ * @param mantemExpiradas Mantém as entradas expiradas até serem substituídas, para que possam ser revalidadas
+ * @param maxObsoletoMs Tempo após a expiração em que a entrada ainda pode ser retornada. Se nulo, não é retornada
+ * @param escopoRevalidacao Escopo das revalidações em segundo plano
+ * @param aoRegistrarEvento Notificado a cada hit, miss e eviction (utilizado para métricas)
+ */
+internal class CacheLru<K : Any, V : Any>(
+    private val maxItems : Int,
+    private val ttlMs : Long? = null,
+    private val relogio : () -> Long = System::nanoTime,
+    private val mantemExpiradas : Boolean = false,
+    private val maxObsoletoMs : Long? = null,
+    private val escopoRevalidacao : CoroutineScope = EscopoSNV.segundoPlano,
+    private val aoRegistrarEvento : (EventoCache) -> Unit = { },
+) {
+
+    private class Entrada<V>(val valor : V, val criadoEmNanos : Long)
+
+    private val lock = Any()
+    private val entradas = LinkedHashMap<K, Entrada<V>>(16, 0.75f, true)
+    private val singleFlight = SingleFlight<K, V>()
+    private val emRevalidacao = ConcurrentHashMap.newKeySet<K>()
+
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+    private val evictions = AtomicLong()
+
+
+    init {
+        require(maxItems > 0) { "Tamanho máximo do cache deve ser positivo" }
+        require(ttlMs == null || ttlMs > 0) { "TTL do cache deve ser positivo" }
+        require(maxObsoletoMs == null || maxObsoletoMs > 0) { "Tempo máximo obsoleto deve ser positivo" }
+        require(maxObsoletoMs == null || ttlMs != null) { "Tempo máximo obsoleto exige TTL" }
+    }
+
+
+
+    /**
+     * Retorna o valor em cache ou executa [loader] para carregá-lo.
+     * Chamadas concorrentes para a mesma chave compartilham uma única execução de [loader].
+     */
+    internal suspend fun obtemOuCarrega(key : K, loader : suspend () -> V) : V {
+        return obtemOuRevalida(key) { loader() }
+    }
+
+
+
+    /**
+     * Como [obtemOuCarrega], mas [loader] recebe o valor expirado da chave (se mantido com [mantemExpiradas]),
+     * permitindo revalidá-lo ao invés de carregá-lo por completo.
+     */
+    internal suspend fun obtemOuRevalida(key : K, loader : suspend (anterior : V?) -> V) : V {
+        return obtemOu(key, revalida = { carrega(key, loader) }) { carrega(key, loader) }
+    }
+
+
+
+    /**
+     * Como [obtemOuRevalida], executando [loader] na thread atual. A espera por uma carga
+     * da mesma chave já em andamento é limitada por [prazo]; a revalidação de uma entrada obsoleta
+     * é executada em [escopoRevalidacao], sem prazo.
+     */
+    internal fun obtemOuRevalidaBloqueante(key : K, prazo : PrazoSNV?, loader : (anterior : V?) -> V) : V {
+        return obtemOu(key, revalida = { carregaBloqueante(key, null, loader) }) { carregaBloqueante(key, prazo, loader) }
+    }
+
+
+
+    private inline fun obtemOu(key : K, noinline revalida : suspend () -> Unit, carrega : () -> V) : V {
+        obtemValido(key)?.let {
+            registraHit()
+            return it
+        }
+
+        obtemObsoleto(key)?.let {
+            registraHit()
+            aoRegistrarEvento(EventoCache.OBSOLETO)
+            revalidaEmSegundoPlano(key, revalida)
+            return it
+        }
+
+        registraMiss()
+        return carrega()
+    }
+
+
+
+    private suspend fun carrega(key : K, loader : suspend (anterior : V?) -> V) : V {
+        return singleFlight.executa(key) {
+            // Outra chamada pode ter carregado o valor enquanto aguardávamos
+            obtemValido(key) ?: loader(obtemExpirado(key)).also { adiciona(key, it) }
+        }
+    }
+
+
+
+    private fun carregaBloqueante(key : K, prazo : PrazoSNV?, loader : (anterior : V?) -> V) : V {
+        return singleFlight.executaBloqueante(key, prazo) {
+            obtemValido(key) ?: loader(obtemExpirado(key)).also { adiciona(key, it) }
+        }
+    }
+
+
+
+    /**
+     * Apenas uma revalidação por chave. Se falhar, o valor obsoleto continua sendo retornado até [maxObsoletoMs].
+     */
+    private fun revalidaEmSegundoPlano(key : K, revalida : suspend () -> Unit) {
+        if (!emRevalidacao.add(key)) return
+
+        escopoRevalidacao.launch {
+            try {
+                revalida()
+            } catch (e : CancellationException) {
+                throw e
+            } catch (e : Exception) {
+                // Mantém o valor obsoleto
+            } finally {
+                emRevalidacao.remove(key)
+            }
+        }
+    }
+
+
+
+    internal fun obtem(key : K) : V? {
+        val valor = obtemValido(key)
+        if (valor != null) registraHit() else registraMiss()
+        return valor
+    }
+
+
+
+    internal fun adiciona(key : K, valor : V) {
+        var removidas = 0
+
+        synchronized(lock) {
+            entradas[key] = Entrada(valor, relogio())
+
+            val iterator = entradas.entries.iterator()
+            while (entradas.size > maxItems && iterator.hasNext()) {
+                iterator.next()
+                iterator.remove()
+                removidas++
+            }
+        }
+
+        if (removidas > 0) {
+            evictions.addAndGet(removidas.toLong())
+            repeat(removidas) { aoRegistrarEvento(EventoCache.EVICTION) }
+        }
+    }
+
+
+
+    internal fun remove(key : K) {
+        synchronized(lock) { entradas.remove(key) }
+    }
+
+
+
+    internal fun limpa() {
+        synchronized(lock) { entradas.clear() }
+    }
+
+
+
+    /**
+     * Cópia das entradas válidas, da menos para a mais recentemente utilizada
+     */
+    internal fun entradas() : List<Pair<K, V>> {
+        synchronized(lock) {
+            return entradas.entries
+                .filter { !isExpirada(it.value) }
+                .map { it.key to it.value.valor }
+        }
+    }
+
+
+
+    internal fun tamanho() : Int = synchronized(lock) { entradas.size }
+
+
+
+    internal fun estatisticas() : EstatisticasCache {
+        return EstatisticasCache(
+            hits = hits.get(),
+            misses = misses.get(),
+            evictions = evictions.get(),
+            tamanho = tamanho(),
+            capacidade = maxItems,
+        )
+    }
+
+
+
+    private fun registraHit() {
+        hits.incrementAndGet()
+        aoRegistrarEvento(EventoCache.HIT)
+    }
+
+
+
+    private fun registraMiss() {
+        misses.incrementAndGet()
+        aoRegistrarEvento(EventoCache.MISS)
+    }
+
+
+
+    private fun obtemValido(key : K) : V? {
+        synchronized(lock) {
+            val entrada = entradas[key] ?: return null
+
+            if (isExpirada(entrada)) {
+                if (!mantemExpiradas && !isUtilizavelObsoleta(entrada)) entradas.remove(key)
+                return null
+            }
+
+            return entrada.valor
+        }
+    }
+
+
+
+    private fun obtemObsoleto(key : K) : V? {
+        if (maxObsoletoMs == null) return null
+        synchronized(lock) {
+            return entradas[key]?.takeIf { isUtilizavelObsoleta(it) }?.valor
+        }
+    }
+
+
+
+    private fun obtemExpirado(key : K) : V? {
+        if (!mantemExpiradas && maxObsoletoMs == null) return null
+        synchronized(lock) { return entradas[key]?.valor }
+    }
+
+
+
+    private fun isUtilizavelObsoleta(entrada : Entrada<V>) : Boolean {
+        val ttl = ttlMs ?: return false
+        val maxObsoleto = maxObsoletoMs ?: return false
+        return relogio() - entrada.criadoEmNanos < (ttl + maxObsoleto) * 1_000_000
+    }
+
+
+
+    private fun isExpirada(entrada : Entrada<V>) : Boolean {
+        val ttl = ttlMs ?: return false
+        return relogio() - entrada.criadoEmNanos >= ttl * 1_000_000
+    }
+
+}
@@ -1,30 +1,64 @@
 package dnit.commons.snv.impl
 
+import dnit.commons.exception.CommonException
 import dnit.commons.model.internal.MiniTrechoSNV
-import java.util.concurrent.ConcurrentHashMap
-import java.util.concurrent.ConcurrentLinkedQueue
+import dnit.commons.snv.EstatisticasCache
+import dnit.commons.snv.TipoCache
+
+/**
+ * Cache dos trechos por (uf, br, tipo, data), armazenados já indexados em [IndiceTrechos].
+ * LRU limitado a [maxItems], com TTL opcional e uma única busca em andamento por chave.
+ * Entradas expiradas são mantidas com seus validadores HTTP para serem revalidadas
+ * com uma requisição condicional, sem baixar novamente os trechos quando não houve alteração.
+ * Com [maxObsoletoMs], entradas expiradas são retornadas de imediato e revalidadas em segundo plano.
+ */
+internal class CacheMiniTrechos(
+    private val maxItems : Int = 128,
+    private val ttlMs : Long? = null,
+    private val maxObsoletoMs : Long? = null,
+    private val relogio : () -> Long = System::nanoTime,
+) {
+
+    private class Entrada(val indice : IndiceTrechos, val validadores : ValidadoresHttp?)
+
+    private val cache = CacheLru<String, Entrada>(maxItems, ttlMs, relogio, mantemExpiradas = true, maxObsoletoMs = maxObsoletoMs) {
+        MetricasSNV.cache(TipoCache.TRECHOS, it)
+    }
+
 
-internal class CacheMiniTrechos(private val maxItems : Int = 10) {
 
-    private val cache = ConcurrentHashMap<String, List<MiniTrechoSNV>>()
-    private val insertionOrder = ConcurrentLinkedQueue<String>()
+    /**
+     * Retorna o índice em cache ou executa [fetcher], que recebe os validadores da entrada expirada (se houver)
+     */
+    internal suspend fun obtemCacheOrFetch(
+        uf : String,
+        br : String,
+        tipo : String,
+        data : String,
+        fetcher: suspend (ValidadoresHttp?) -> RespostaTrechos
+    ) : IndiceTrechos {
+        return cache.obtemOuRevalida(key(uf, br, tipo, data)) { anterior ->
+            entrada(uf, br, fetcher(anterior?.validadores), anterior)
+        }.indice
+    }
 
 
 
-    internal suspend fun obtemCacheOrFetch(
+    /**
+     * Como [obtemCacheOrFetch], executando [fetcher] na thread atual.
+     * A espera por uma busca da mesma chave já em andamento é limitada por [prazo].
+     */
+    internal fun obtemCacheOrFetchBloqueante(
         uf : String,
         br : String,
         tipo : String,
         data : String,
-        fetcher: suspend () -> List<MiniTrechoSNV>
-    ) : List<MiniTrechoSNV> {
-        val cacheKey = key(uf, br, tipo, data)
-
-        return cache[cacheKey] ?: run {
-            val fetchedData = fetcher()
-            add(uf, br, tipo, data, fetchedData)
-            fetchedData
-        }
+        prazo : PrazoSNV?,
+        fetcher: (ValidadoresHttp?) -> RespostaTrechos
+    ) : IndiceTrechos {
+        return cache.obtemOuRevalidaBloqueante(key(uf, br, tipo, data), prazo) { anterior ->
+            entrada(uf, br, fetcher(anterior?.validadores), anterior)
+        }.indice
     }
 
 
@@ -36,22 +70,23 @@ internal class CacheMiniTrechos(private val maxItems : Int = 10) {
         data : String,
         miniTrechos : List<MiniTrechoSNV>,
     ) {
-        val cacheKey = key(uf, br, tipo, data)
-
-        // If key already exists, don't add to queue again
-        if (!cache.containsKey(cacheKey)) {
-            // If cache is full, remove the oldest item (first in queue)
-            if (cache.size >= maxItems) {
-                val oldestKey = insertionOrder.poll()
-                oldestKey?.let { cache.remove(it) }
-            }
-
-            // Add new key to insertion order queue
-            insertionOrder.offer(cacheKey)
-        }
+        cache.adiciona(key(uf, br, tipo, data), Entrada(IndiceTrechos.de(miniTrechos), null))
+    }
+
+
+
+    internal fun estatisticas() : EstatisticasCache = cache.estatisticas()
 
-        // Add/update the item in cache
-        cache[cacheKey] = miniTrechos
+
+
+    private fun entrada(uf : String, br : String, resposta : RespostaTrechos, anterior : Entrada?) : Entrada {
+        val trechos = resposta.trechos
+
+        return when {
+            trechos != null -> Entrada(IndiceTrechos.de(trechos), resposta.validadores)
+            anterior != null -> Entrada(anterior.indice, resposta.validadores ?: anterior.validadores)
+            else -> throw CommonException("Resposta não modificada sem trechos em cache para $uf-$br")
+        }
     }
 
 
@@ -60,4 +95,4 @@ internal class CacheMiniTrechos(private val maxItems : Int = 10) {
         return "$uf-$br-$tipo-$data".uppercase()
     }
 
-}
\ No newline at end of file
+}
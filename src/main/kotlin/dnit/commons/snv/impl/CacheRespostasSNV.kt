@@ -0,0 +1,117 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.snv.EstatisticasCache
+import dnit.commons.snv.SNVResponse
+import dnit.commons.snv.TipoCache
+import kotlin.math.pow
+import kotlin.math.roundToLong
+
+/**
+ * Cache das respostas de [ClientSNVImplementation.obtemSnvs] por coordenada aproximada.
+ * A coordenada é arredondada para [casasDecimais] casas, então pontos muito próximos
+ * (ou repetidos) reutilizam a mesma resposta. Apenas respostas não vazias são armazenadas,
+ * pois uma lista vazia também pode indicar falha temporária da API-Geo.
+ *
+ * @param casasDecimais Precisão da coordenada na chave (5 casas ≈ 1,1 m)
+ * @param maxItems Quantidade máxima de respostas mantidas
+ * @param ttlMs Tempo de vida de cada resposta. Se nulo as respostas não expiram
+ */
+internal class CacheRespostasSNV(
+    casasDecimais : Int = 5,
+    maxItems : Int = 50_000,
+    ttlMs : Long? = null,
+) {
+
+    private data class Chave(
+        val lat : Long,
+        val lng : Long,
+        val dataReferencia : String,
+        val uf : String?,
+        val br : String?,
+        val buffers : List<Double>,
+    )
+
+    private val escala : Double
+    private val cache = CacheLru<Chave, List<SNVResponse>>(maxItems, ttlMs) {
+        MetricasSNV.cache(TipoCache.RESPOSTAS, it)
+    }
+
+
+    init {
+        require(casasDecimais in 0..9) { "Casas decimais deve estar entre 0 e 9" }
+        escala = 10.0.pow(casasDecimais)
+    }
+
+
+
+    /**
+     * Retorna a resposta em cache, com latitude e longitude da consulta atual
+     */
+    internal fun obtem(
+        lat : Double,
+        lng : Double,
+        dataReferencia : String,
+        uf : String?,
+        br : String?,
+        buffers : List<Double>,
+    ) : List<SNVResponse>? {
+        val respostas = cache.obtem(chave(lat, lng, dataReferencia, uf, br, buffers)) ?: return null
+        return respostas.map { it.comCoordenada(lat, lng) }
+    }
+
+
+
+    internal fun adiciona(
+        lat : Double,
+        lng : Double,
+        dataReferencia : String,
+        uf : String?,
+        br : String?,
+        buffers : List<Double>,
+        respostas : List<SNVResponse>,
+    ) {
+        if (respostas.isEmpty()) return
+        cache.adiciona(chave(lat, lng, dataReferencia, uf, br, buffers), respostas)
+    }
+
+
+
+    internal fun estatisticas() : EstatisticasCache = cache.estatisticas()
+
+
+
+    private fun chave(
+        lat : Double,
+        lng : Double,
+        dataReferencia : String,
+        uf : String?,
+        br : String?,
+        buffers : List<Double>,
+    ) : Chave {
+        return Chave(
+            lat = (lat * escala).roundToLong(),
+            lng = (lng * escala).roundToLong(),
+            dataReferencia = dataReferencia,
+            uf = uf?.uppercase(),
+            br = br,
+            buffers = buffers,
+        )
+    }
+
+
+
+    private fun SNVResponse.comCoordenada(lat : Double, lng : Double) : SNVResponse {
+        return SNVResponse(
+            snv = snv,
+            versao = versao,
+            coincidencia = coincidencia,
+            uf = uf,
+            br = br,
+            tipo = tipo,
+            latitude = lat,
+            longitude = lng,
+            km = km,
+        )
+    }
+
+}
@@ -0,0 +1,126 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.snv.EstadoCircuito
+
+/**
+ * Circuit breaker com os estados fechado, aberto e semi-aberto.
+ * Após [limiteFalhas] falhas consecutivas o circuito abre e as chamadas são rejeitadas
+ * por [tempoAbertoMs]. Em seguida, até [chamadasSemiAberto] chamadas de teste são liberadas:
+ * um sucesso fecha o circuito e uma falha o abre novamente.
+ *
+ * @param relogio Fonte de tempo em nanossegundos (substituível em testes)
+ */
+internal class CircuitBreaker(
+    private val limiteFalhas : Int = 5,
+    private val tempoAbertoMs : Long = 30_000L,
+    private val chamadasSemiAberto : Int = 1,
+    private val relogio : () -> Long = System::nanoTime,
+) {
+
+    private val lock = Any()
+
+    private var estado = EstadoCircuito.FECHADO
+    private var falhasConsecutivas = 0
+    private var abertoEmNanos = 0L
+    private var sondasEmAndamento = 0
+
+    private var aberturas = 0L
+    private var rejeitadas = 0L
+
+
+    init {
+        require(limiteFalhas > 0) { "Limite de falhas deve ser positivo" }
+        require(tempoAbertoMs > 0) { "Tempo aberto deve ser positivo" }
+        require(chamadasSemiAberto > 0) { "Chamadas semi-aberto deve ser positivo" }
+    }
+
+
+
+    /**
+     * Indica se a chamada pode ser executada. Quando retorna true, a chamada deve
+     * obrigatoriamente informar o resultado em [registraSucesso], [registraFalha] ou [registraAbandono].
+     */
+    internal fun permite() : Boolean {
+        synchronized(lock) {
+            if (estado == EstadoCircuito.ABERTO
+                && relogio() - abertoEmNanos >= tempoAbertoMs * 1_000_000) {
+                estado = EstadoCircuito.SEMI_ABERTO
+                sondasEmAndamento = 0
+            }
+
+            return when (estado) {
+                EstadoCircuito.FECHADO -> true
+
+                EstadoCircuito.SEMI_ABERTO -> if (sondasEmAndamento < chamadasSemiAberto) {
+                    sondasEmAndamento++
+                    true
+                } else {
+                    rejeitadas++
+                    false
+                }
+
+                EstadoCircuito.ABERTO -> {
+                    rejeitadas++
+                    false
+                }
+            }
+        }
+    }
+
+
+
+    internal fun registraSucesso() {
+        synchronized(lock) {
+            falhasConsecutivas = 0
+            if (estado == EstadoCircuito.SEMI_ABERTO) {
+                estado = EstadoCircuito.FECHADO
+                sondasEmAndamento = 0
+            }
+        }
+    }
+
+
+
+    internal fun registraFalha() {
+        synchronized(lock) {
+            falhasConsecutivas++
+            if (estado == EstadoCircuito.SEMI_ABERTO
+                || (estado == EstadoCircuito.FECHADO && falhasConsecutivas >= limiteFalhas)) {
+                abre()
+            }
+        }
+    }
+
+
+
+    /**
+     * A chamada liberada foi cancelada antes de concluir, sem indicar sucesso ou falha
+     */
+    internal fun registraAbandono() {
+        synchronized(lock) {
+            if (estado == EstadoCircuito.SEMI_ABERTO && sondasEmAndamento > 0) {
+                sondasEmAndamento--
+            }
+        }
+    }
+
+
+
+    internal fun estado() : EstadoCircuito = synchronized(lock) { estado }
+
+    internal fun falhasConsecutivas() : Int = synchronized(lock) { falhasConsecutivas }
+
+    internal fun aberturas() : Long = synchronized(lock) { aberturas }
+
+    internal fun rejeitadas() : Long = synchronized(lock) { rejeitadas }
+
+
+
+    private fun abre() {
+        estado = EstadoCircuito.ABERTO
+        abertoEmNanos = relogio()
+        sondasEmAndamento = 0
+        aberturas++
+    }
+
+}
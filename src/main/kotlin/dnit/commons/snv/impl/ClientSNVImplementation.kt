@@ -1,13 +1,40 @@
 package dnit.commons.snv.impl
 
 import dnit.commons.exception.CommonException
-import dnit.commons.model.internal.MiniTrechoSNV
+import dnit.commons.exception.TempoEsgotadoException
+import dnit.commons.model.BR
 import dnit.commons.model.internal.RotaSNV
+import dnit.commons.snv.Coordenada
+import dnit.commons.snv.EndpointApiGeo
+import dnit.commons.snv.EstatisticasCache
+import dnit.commons.snv.EstatisticasCircuito
+import dnit.commons.snv.EstatisticasLimitador
+import dnit.commons.snv.ProgressoPreaquecimento
+import dnit.commons.snv.ResultadoLoteSNV
 import dnit.commons.snv.SNVResponse
-import dnit.commons.utils.runSuspendableWithRetry
+import dnit.commons.snv.TransporteApiGeo
+import java.nio.file.Path
 import java.time.LocalDate
 import java.time.format.DateTimeFormatter
 import java.time.format.DateTimeParseException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.IO
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.channelFlow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import kotlinx.coroutines.withContext
+import kotlin.coroutines.cancellation.CancellationException
 
 
 /**
@@ -18,7 +45,165 @@ internal object ClientSNVImplementation {
     @Volatile
     private var delayClusterDays: Long? = null // Existe um erro de data no cluster
     private val formatter: DateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd")
-    private val cacheMiniTrechos: CacheMiniTrechos = CacheMiniTrechos(maxItems = 10)
+
+    // Ponto consultado para obter a versão do SNV
+    private const val LAT_VERSAO = -16.621117
+    private const val LNG_VERSAO = -49.207783
+    private const val BUFFER_VERSAO = 10_000.0
+
+    @Volatile
+    private var cacheMiniTrechos: CacheMiniTrechos = CacheMiniTrechos()
+
+    @Volatile
+    internal var threadsVirtuais: Boolean = false
+
+    @Volatile
+    private var cacheDiscoTrechos: CacheDiscoTrechos? = null
+
+    @Volatile
+    private var apiGeoClient: ApiGeoClientImpl = ApiGeoClientImpl()
+
+    @Volatile
+    private var resiliencia: ResilienciaApiGeo = ResilienciaApiGeo()
+
+    @Volatile
+    private var bufferAdaptativo: TabelaBufferAdaptativo? = null
+
+    @Volatile
+    private var linhaTempoVersoes: LinhaTempoVersoesSnv? = null
+
+    @Volatile
+    private var cacheRespostas: CacheRespostasSNV? = null
+
+    private val versoesEmRevalidacao = ConcurrentHashMap.newKeySet<LocalDate>()
+
+    // Chamadas idênticas e simultâneas ao localizarkm compartilham o mesmo resultado
+    private val rotasEmAndamento = SingleFlight<ChaveRota, List<RotaSNV>>()
+
+    private class ResultadoSnvs(
+        val respostas : List<SNVResponse>,
+        val rotas : List<RotaResolvida>?,
+        val bufferKm : Double,
+    )
+
+    private data class ChaveRota(
+        val lat : Double,
+        val lng : Double,
+        val bufferM : Double,
+        val dataReferencia : String,
+    )
+
+
+
+    internal fun configuraTransporte(transporte: TransporteApiGeo) {
+        apiGeoClient = ApiGeoClientImpl(transporte)
+    }
+
+
+
+    internal fun configuraCircuitBreaker(
+        habilitado: Boolean,
+        limiteFalhas: Int,
+        tempoAbertoMs: Long,
+        chamadasSemiAberto: Int,
+        proporcaoRetry: Double,
+        maximoTokensRetry: Double,
+    ) {
+        resiliencia = if (habilitado) {
+            ResilienciaApiGeo(
+                CircuitBreaker(limiteFalhas, tempoAbertoMs, chamadasSemiAberto),
+                OrcamentoRetry(proporcaoRetry, maximoTokensRetry),
+                resiliencia.limitador,
+            )
+        } else {
+            ResilienciaApiGeo(limitador = resiliencia.limitador)
+        }
+    }
+
+
+
+    internal fun configuraLimitador(
+        requisicoesPorSegundo: Double?,
+        rajada: Int,
+        maxConcorrencia: Int,
+        maxEsperaMs: Long,
+    ) {
+        resiliencia.limitador = LimitadorApiGeo(requisicoesPorSegundo, rajada, maxConcorrencia, maxEsperaMs)
+    }
+
+
+
+    internal fun estatisticasLimitador(): EstatisticasLimitador = resiliencia.limitador.estatisticas()
+
+
+
+    internal fun estatisticasCircuito(): EstatisticasCircuito = resiliencia.estatisticas()
+
+
+
+    internal fun configuraCacheTrechos(maxItems: Int, ttlMs: Long?, maxObsoletoMs: Long?) {
+        cacheMiniTrechos = CacheMiniTrechos(maxItems, ttlMs, maxObsoletoMs)
+    }
+
+
+
+    internal fun estatisticasCacheTrechos(): EstatisticasCache = cacheMiniTrechos.estatisticas()
+
+
+
+    internal fun configuraCacheDisco(diretorio: Path?) {
+        cacheDiscoTrechos = diretorio?.let { CacheDiscoTrechos(it) }
+    }
+
+
+
+    internal fun exportaSnapshotTrechos(destino: Path): Int {
+        val disco = cacheDiscoTrechos ?: throw CommonException("Cache de trechos em disco não está habilitado")
+        return disco.exportaSnapshot(destino)
+    }
+
+
+
+    internal fun importaSnapshotTrechos(origem: Path): Int {
+        val disco = cacheDiscoTrechos ?: throw CommonException("Cache de trechos em disco não está habilitado")
+        return disco.importaSnapshot(origem)
+    }
+
+
+
+    internal fun configuraCacheVersoes(habilitado: Boolean, ttlMs: Long, maxObsoletoMs: Long?) {
+        linhaTempoVersoes = if (habilitado) LinhaTempoVersoesSnv(ttlMs, maxObsoletoMs) else null
+    }
+
+
+
+    internal fun configuraCacheRespostas(habilitado: Boolean, casasDecimais: Int, maxItems: Int, ttlMs: Long?) {
+        cacheRespostas = if (habilitado) CacheRespostasSNV(casasDecimais, maxItems, ttlMs) else null
+    }
+
+
+
+    internal fun estatisticasCacheRespostas(): EstatisticasCache {
+        return cacheRespostas?.estatisticas() ?: EstatisticasCache(0, 0, 0, 0, 0)
+    }
+
+
+
+    internal fun configuraBufferAdaptativo(
+        habilitado: Boolean,
+        tamanhoCelulaGraus: Double,
+        maxCelulas: Int,
+        arquivo: Path?,
+    ) {
+        bufferAdaptativo = if (habilitado) TabelaBufferAdaptativo(tamanhoCelulaGraus, maxCelulas, arquivo) else null
+    }
+
+
+
+    internal fun salvaBufferAdaptativo() {
+        val tabela = bufferAdaptativo ?: throw CommonException("Buffer adaptativo não está habilitado")
+        tabela.salva()
+    }
 
 
 
@@ -32,13 +217,70 @@ internal object ClientSNVImplementation {
 
 
     internal suspend fun obtemVersaoSnv(dataReferencia: String): String? {
-        val rotas = runSuspendableWithRetry(
-            callable = { ApiGeoClientImpl.fetchRota(-16.621117,-49.207783, 10_000.0, dataReferencia) },
-            maxRetries = 3,
-            delayMs = 1_000L,
-            defaultValue = emptyList(),
-        )
-        return rotas.firstOrNull()?.versao
+        val data = parseData(dataReferencia)
+        versaoDaLinhaTempo(dataReferencia, data)?.let { return it }
+
+        return consultaVersaoSnv(dataReferencia, data)
+    }
+
+
+
+    private fun parseData(dataReferencia: String): LocalDate? {
+        return try {
+            LocalDate.parse(dataReferencia, formatter)
+        } catch (exception: DateTimeParseException) {
+            null // Mantém o comportamento de repassar a data informada para a API
+        }
+    }
+
+
+
+    private fun versaoDaLinhaTempo(dataReferencia: String, data: LocalDate?): String? {
+        val linhaTempo = linhaTempoVersoes
+        data?.let { linhaTempo?.consulta(it) }?.let { return it }
+
+        // Stale-while-revalidate: responde com a versão obsoleta e atualiza em segundo plano
+        data?.let { linhaTempo?.consultaObsoleta(it) }?.let { versao ->
+            revalidaVersaoEmSegundoPlano(dataReferencia, data)
+            return versao
+        }
+
+        return null
+    }
+
+
+
+    private suspend fun consultaVersaoSnv(dataReferencia: String, data: LocalDate?): String? {
+        val rotas = localizaRotas(LAT_VERSAO, LNG_VERSAO, BUFFER_VERSAO, dataReferencia,
+                                  retryCount = 3, retryDelayMs = 1_000L)
+        return registraVersao(data, rotas)
+    }
+
+
+
+    private fun registraVersao(data: LocalDate?, rotas: List<RotaSNV>): String? {
+        val linhaTempo = linhaTempoVersoes
+        val versao = rotas.firstOrNull()?.versao
+
+        if (linhaTempo != null && data != null && versao != null) {
+            linhaTempo.registra(data, versao)
+        }
+
+        return versao
+    }
+
+
+
+    private fun revalidaVersaoEmSegundoPlano(dataReferencia: String, data: LocalDate) {
+        if (!versoesEmRevalidacao.add(data)) return
+
+        EscopoSNV.segundoPlano.launch {
+            try {
+                consultaVersaoSnv(dataReferencia, data)
+            } finally {
+                versoesEmRevalidacao.remove(data)
+            }
+        }
     }
 
 
@@ -55,23 +297,70 @@ internal object ClientSNVImplementation {
         retryCount: Int,
         retryDelayMs: Long,
         bufferList : List<Double>?,
+        buffersParalelos : Int = 1,
+        timeoutTotalMs : Long? = null,
     ): List<SNVResponse> {
+        return PrazoSNV.comPrazo(timeoutTotalMs) {
+            obtemSnvsResolvidos(lat, lng, uf, br, dataReferencia, startBuffer, maxBuffer,
+                                retryCount, retryDelayMs, bufferList, buffersParalelos).respostas
+        }
+    }
+
+
+
+    /**
+     * Como [obtemSnvs], mas também retorna as rotas resolvidas (nulas quando a resposta veio do cache)
+     */
+    private suspend fun obtemSnvsResolvidos(
+        lat : Double,
+        lng : Double,
+        uf : String?,
+        br : String?,
+        dataReferencia: String?,
+        startBuffer: Double,
+        maxBuffer: Double,
+        retryCount: Int,
+        retryDelayMs: Long,
+        bufferList : List<Double>?,
+        buffersParalelos : Int,
+    ): ResultadoSnvs {
         val data = formataData(dataReferencia)
+
+        val cache = cacheRespostas
+        val buffersChave = bufferList ?: generateBufferSequence(startBuffer, maxBuffer, retryCount)
+        cache?.obtem(lat, lng, data, uf, br, buffersChave)?.let { return ResultadoSnvs(it, null, 0.0) }
+
         val (buffer, rotas) = obtemRotasSnv(lat, lng, data,
                                   startBuffer, maxBuffer,
-                                  retryCount, retryDelayMs, bufferList)
-
-        return rotas.flatMap { rota ->
-            toSnvResponse(
-                lat,
-                lng,
-                rota,
-                buffer / 1000.0,
-                data,
-                retryCount,
-                retryDelayMs
-            )
+                                  retryCount, retryDelayMs, bufferList, buffersParalelos)
+
+        if (rotas.isNotEmpty()) {
+            bufferAdaptativo?.registra(lat, lng, buffer)
         }
+
+        val rotasResolvidas = resolveRotas(lat, lng, rotas, buffer / 1000.0, data, retryCount, retryDelayMs)
+
+        return concluiSnvs(lat, lng, uf, br, data, buffersChave, buffer, rotasResolvidas,
+                           PrazoSNV.atual()?.atingido == true)
+    }
+
+
+
+    /**
+     * Ordena as respostas das rotas resolvidas e as armazena no cache de respostas, se completas
+     */
+    private fun concluiSnvs(
+        lat : Double,
+        lng : Double,
+        uf : String?,
+        br : String?,
+        data : String,
+        buffersChave : List<Double>,
+        buffer : Double,
+        rotasResolvidas : List<RotaResolvida>,
+        prazoAtingido : Boolean,
+    ): ResultadoSnvs {
+        val respostas = rotasResolvidas.flatMap { it.respostas }
         .sortedWith(compareBy<SNVResponse> { it.uf != uf }
             .thenBy { it.br != br }
             .thenBy { it.snv == null }
@@ -80,42 +369,506 @@ internal object ClientSNVImplementation {
             .thenBy { it.br }
             .thenBy { it.tipo }
         )
+
+        // Com alguma busca de trechos falha ou interrompida pelo prazo o resultado é parcial e não é armazenado
+        val parcial = rotasResolvidas.any { it.degradada } || prazoAtingido
+        if (!parcial) {
+            cacheRespostas?.adiciona(lat, lng, data, uf, br, buffersChave, respostas)
+        }
+        return ResultadoSnvs(respostas, rotasResolvidas, buffer / 1000.0)
+    }
+
+
+    internal suspend fun obtemSnvsEmLote(
+        coordenadas : List<Coordenada>,
+        uf : String?,
+        br : String?,
+        dataReferencia: String?,
+        startBuffer: Double,
+        maxBuffer: Double,
+        retryCount: Int,
+        retryDelayMs: Long,
+        bufferList : List<Double>?,
+        paralelismo : Int,
+        buffersParalelos : Int = 1,
+        timeoutTotalMs : Long? = null,
+    ): List<ResultadoLoteSNV> {
+        require(paralelismo > 0) { "Paralelismo deve ser positivo" }
+
+        // Valida a data uma unica vez, falhando o lote inteiro se o formato for invalido
+        val data = formataData(dataReferencia)
+        val semaphore = Semaphore(paralelismo)
+
+        // O prazo vale para o lote inteiro: coordenadas não concluídas a tempo retornam o erro de timeout
+        return PrazoSNV.comPrazo(timeoutTotalMs) {
+            coroutineScope {
+                coordenadas.map { coordenada ->
+                    async {
+                        semaphore.withPermit {
+                            resultadoLote(coordenada) {
+                                obtemSnvs(coordenada.latitude, coordenada.longitude,
+                                          uf, br, data,
+                                          startBuffer, maxBuffer,
+                                          retryCount, retryDelayMs, bufferList,
+                                          buffersParalelos)
+                            }
+                        }
+                    }
+                }.awaitAll()
+            }
+        }
+    }
+
+
+
+    /**
+     * Resultado da consulta de uma coordenada em um lote: erros não interrompem o lote
+     */
+    private inline fun resultadoLote(coordenada : Coordenada, consulta : () -> List<SNVResponse>): ResultadoLoteSNV {
+        return try {
+            ResultadoLoteSNV(coordenada, consulta())
+
+        } catch (e : CancellationException) {
+            throw e
+
+        } catch (e : InterruptedException) {
+            throw e
+
+        } catch (e : Exception) {
+            ResultadoLoteSNV(coordenada, emptyList(), e)
+        }
+    }
+
+
+
+
+    internal fun obtemSnvsFlow(
+        coordenadas : Flow<Coordenada>,
+        uf : String?,
+        br : String?,
+        dataReferencia: String?,
+        startBuffer: Double,
+        maxBuffer: Double,
+        retryCount: Int,
+        retryDelayMs: Long,
+        bufferList : List<Double>?,
+        concorrencia : Int,
+        ordenado : Boolean,
+    ): Flow<ResultadoLoteSNV> {
+        require(concorrencia > 0) { "Concorrência deve ser positiva" }
+
+        // Valida a data na criação do fluxo; se nula, cada ponto utiliza a data do momento da consulta
+        dataReferencia?.let { formataData(it) }
+
+        val consulta : suspend (Coordenada) -> ResultadoLoteSNV = { coordenada ->
+            resultadoLote(coordenada) {
+                obtemSnvs(coordenada.latitude, coordenada.longitude,
+                          uf, br, dataReferencia,
+                          startBuffer, maxBuffer,
+                          retryCount, retryDelayMs, bufferList)
+            }
+        }
+
+        return if (ordenado) fluxoOrdenado(coordenadas, concorrencia, consulta)
+               else fluxoDesordenado(coordenadas, concorrencia, consulta)
+    }
+
+
+
+    /**
+     * Cada permissão cobre uma consulta desde o início até a emissão do seu resultado, limitando
+     * as consultas em andamento e os resultados aguardando a emissão (em ordem) a [concorrencia].
+     */
+    private fun fluxoOrdenado(
+        coordenadas : Flow<Coordenada>,
+        concorrencia : Int,
+        consulta : suspend (Coordenada) -> ResultadoLoteSNV,
+    ): Flow<ResultadoLoteSNV> = flow {
+        coroutineScope {
+            val semaphore = Semaphore(concorrencia)
+            val pendentes = Channel<Deferred<ResultadoLoteSNV>>(Channel.UNLIMITED)
+
+            launch {
+                try {
+                    coordenadas.collect { coordenada ->
+                        semaphore.acquire()
+                        pendentes.send(async { consulta(coordenada) })
+                    }
+                } finally {
+                    pendentes.close()
+                }
+            }
+
+            for (pendente in pendentes) {
+                val resultado = pendente.await()
+                semaphore.release()
+                emit(resultado)
+            }
+        }
+    }
+
+
+
+    /**
+     * Emite os resultados à medida que ficam prontos. Sem buffer entre as consultas e o coletor,
+     * um coletor lento retém as permissões e suspende a leitura de novas coordenadas.
+     */
+    private fun fluxoDesordenado(
+        coordenadas : Flow<Coordenada>,
+        concorrencia : Int,
+        consulta : suspend (Coordenada) -> ResultadoLoteSNV,
+    ): Flow<ResultadoLoteSNV> = channelFlow {
+        val semaphore = Semaphore(concorrencia)
+
+        coordenadas.collect { coordenada ->
+            semaphore.acquire()
+            launch {
+                try {
+                    send(consulta(coordenada))
+                } finally {
+                    semaphore.release()
+                }
+            }
+        }
+    }.buffer(Channel.RENDEZVOUS)
+
+
+
+
+    internal suspend fun obtemSnvsTrajeto(
+        coordenadas : List<Coordenada>,
+        uf : String?,
+        br : String?,
+        dataReferencia: String?,
+        startBuffer: Double,
+        maxBuffer: Double,
+        retryCount: Int,
+        retryDelayMs: Long,
+        bufferList : List<Double>?,
+        distanciaMaximaM : Double,
+        timeoutTotalMs : Long? = null,
+    ): List<ResultadoLoteSNV> {
+        require(distanciaMaximaM >= 0) { "Distância máxima deve ser maior ou igual a zero" }
+
+        val data = formataData(dataReferencia)
+
+        // Após o prazo, apenas os pontos que reaproveitam a âncora ainda obtêm resultado
+        return PrazoSNV.comPrazo(timeoutTotalMs) {
+            percorreTrajeto(coordenadas, distanciaMaximaM) { coordenada ->
+                obtemSnvsResolvidos(coordenada.latitude, coordenada.longitude,
+                                    uf, br, data,
+                                    startBuffer, maxBuffer,
+                                    retryCount, retryDelayMs, bufferList, 1)
+            }
+        }
+    }
+
+
+
+    /**
+     * Consulta com [consulta] os pontos que não podem reaproveitar a âncora anterior do trajeto
+     */
+    private inline fun percorreTrajeto(
+        coordenadas : List<Coordenada>,
+        distanciaMaximaM : Double,
+        consulta : (Coordenada) -> ResultadoSnvs,
+    ): List<ResultadoLoteSNV> {
+        var contexto : ContextoTrajeto? = null
+
+        return coordenadas.map { coordenada ->
+            try {
+                contexto?.reaproveita(coordenada.latitude, coordenada.longitude, distanciaMaximaM)?.let {
+                    return@map ResultadoLoteSNV(coordenada, it)
+                }
+
+                val resultado = consulta(coordenada)
+
+                // Uma âncora com trechos não obtidos não é reaproveitada
+                contexto = resultado.rotas?.takeIf { rotas -> rotas.none { it.degradada } }?.let {
+                    ContextoTrajeto.de(coordenada.latitude, coordenada.longitude, resultado.respostas, it,
+                                       resultado.bufferKm, contexto)
+                }
+                ResultadoLoteSNV(coordenada, resultado.respostas)
+
+            } catch (e : CancellationException) {
+                throw e
+
+            } catch (e : InterruptedException) {
+                throw e
+
+            } catch (e : Exception) {
+                contexto = null
+                ResultadoLoteSNV(coordenada, emptyList(), e)
+            }
+        }
+    }
+
+
+
+
+    internal suspend fun preaquecerCache(
+        ufs : List<String>,
+        brs : List<String>,
+        dataReferencia : String?,
+        paralelismo : Int,
+        retryCount : Int,
+        retryDelayMs : Long,
+        progresso : ProgressoPreaquecimento?,
+    ): Int {
+        require(paralelismo > 0) { "Paralelismo deve ser positivo" }
+
+        val data = formataData(dataReferencia)
+        val combinacoes = combinacoesPreaquecimento(ufs, brs)
+
+        // A versão só é necessária para localizar os trechos no cache em disco
+        val versao = if (cacheDiscoTrechos != null) obtemVersaoSnv(data) else null
+
+        val semaphore = Semaphore(paralelismo)
+        val concluidos = AtomicInteger()
+        val carregados = AtomicInteger()
+
+        coroutineScope {
+            combinacoes.forEach { (uf, br) ->
+                launch {
+                    semaphore.withPermit {
+                        val indice = obtemIndiceTrechos(uf, br, "B", versao, data, retryCount, retryDelayMs)
+                        if (indice != null && indice.tamanho > 0) carregados.incrementAndGet()
+                        progresso?.onProgresso(concluidos.incrementAndGet(), combinacoes.size)
+                    }
+                }
+            }
+        }
+
+        return carregados.get()
+    }
+
+
+
+    private fun combinacoesPreaquecimento(ufs : List<String>, brs : List<String>): List<Pair<String, String>> {
+        // Mesmo formato das BRs retornadas pela API-Geo ("010"), que compõe a chave do cache de trechos
+        val brsNormalizadas = brs.map { BR.sanitizeBr(it) }
+        return ufs.flatMap { uf -> brsNormalizadas.map { br -> uf.uppercase() to br } }.distinct()
+    }
+
+
+
+
+    private suspend fun obtemRotasSnv(
+        lat : Double,
+        lng : Double,
+        dataReferencia : String,
+        startBuffer: Double,
+        maxBuffer: Double,
+        retryCount: Int,
+        retryDelayMs: Long,
+        bufferList : List<Double>?,
+        buffersParalelos : Int,
+    ): Pair<Double, List<RotaSNV>> {
+        validaBuffers(dataReferencia, startBuffer, maxBuffer, retryCount, retryDelayMs, buffersParalelos)
+
+        return procuraRotas(lat, lng, bufferList ?: generateBufferSequence(startBuffer, maxBuffer, retryCount),
+                            buffersParalelos,
+                            verifica = { PrazoSNV.verifica() },
+                            sondaJanela = { sondaBuffersEmParalelo(lat, lng, dataReferencia, it, retryCount, retryDelayMs) },
+                            localiza = { localizaRotas(lat, lng, it, dataReferencia, retryCount, retryDelayMs) })
+    }
+
+
+
+    private fun validaBuffers(
+        dataReferencia : String,
+        startBuffer: Double,
+        maxBuffer: Double,
+        retryCount: Int,
+        retryDelayMs: Long,
+        buffersParalelos : Int,
+    ) {
+        require(dataReferencia.isNotBlank()) { "Data referencia deve ser preenchida"}
+        require(startBuffer > 0) { "Buffer inicial deve ser positivo" }
+        require(startBuffer <= maxBuffer) { "Buffer max deve ser maior ou igual ao buffer inicial" }
+        require(retryCount >= 0) { "Número de tentativas deve ser maior ou igual a zero" }
+        require(retryDelayMs >= 0) { "RetryDelay deve ser maior ou igual a zero" }
+        require(buffersParalelos > 0) { "Buffers paralelos deve ser positivo" }
+    }
+
+
+
+
+    /**
+     * Percorre a [sequencia] de buffers (reordenada pelo buffer adaptativo, se habilitado) até encontrar rotas,
+     * um buffer por vez com [localiza] ou em janelas de [paralelos] buffers com [sondaJanela].
+     * [verifica] é chamado antes de cada buffer ou janela, para interromper a busca com o prazo esgotado.
+     */
+    private inline fun procuraRotas(
+        lat : Double,
+        lng : Double,
+        sequencia : List<Double>,
+        paralelos : Int,
+        verifica : () -> Unit,
+        sondaJanela : (List<Double>) -> Pair<Double, List<RotaSNV>>?,
+        localiza : (Double) -> List<RotaSNV>,
+    ): Pair<Double, List<RotaSNV>> {
+        var usedBuffer = 0.0
+        val tabela = bufferAdaptativo
+        val buffers = tabela?.ordena(lat, lng, sequencia) ?: sequencia
+
+        val falhas = mutableListOf<Double>()
+        var encontrado : Pair<Double, List<RotaSNV>>? = null
+
+        if (paralelos > 1) {
+            for (janela in buffers.chunked(paralelos)) {
+                verifica()
+                usedBuffer = janela.max()
+                val resultado = sondaJanela(janela)
+
+                // Na janela, apenas os buffers menores que o vencedor foram aguardados
+                falhas += janela.filter { resultado == null || it < resultado.first }
+                if (resultado != null) {
+                    encontrado = resultado
+                    break
+                }
+            }
+
+        } else {
+            for (buffer in buffers) {
+                verifica()
+                usedBuffer = buffer
+                val result = localiza(buffer)
+                MetricasSNV.buffer(buffer, result.isNotEmpty())
+
+                if (result.isNotEmpty()) {
+                    encontrado = Pair(buffer, result)
+                    break
+                }
+                falhas += buffer
+            }
+        }
+
+        if (encontrado == null) return Pair(usedBuffer, emptyList())
+        if (tabela == null) return encontrado
+
+        return refinaBuffer(buffers, falhas, encontrado, localiza)
+    }
+
+
+
+
+    /**
+     * Com a sequência reordenada pelo buffer adaptativo, buffers menores que o encontrado podem não ter
+     * sido consultados. Desce pelos buffers não consultados (acima da maior falha) enquanto retornarem rotas,
+     * de modo que o buffer utilizado seja o menor com resultado, independente do que a célula aprendeu.
+     */
+    private inline fun refinaBuffer(
+        buffers : List<Double>,
+        falhas : List<Double>,
+        encontrado : Pair<Double, List<RotaSNV>>,
+        localiza : (Double) -> List<RotaSNV>,
+    ): Pair<Double, List<RotaSNV>> {
+        val maiorFalha = falhas.filter { it < encontrado.first }.maxOrNull() ?: Double.NEGATIVE_INFINITY
+        val candidatos = buffers.filter { it < encontrado.first && it > maiorFalha }.distinct().sortedDescending()
+        var menor = encontrado
+
+        for (buffer in candidatos) {
+            val result = try {
+                localiza(buffer)
+            } catch (e : TempoEsgotadoException) {
+                break // Mantém o buffer já encontrado
+            }
+            MetricasSNV.buffer(buffer, result.isNotEmpty())
+
+            if (result.isEmpty()) break
+            menor = Pair(buffer, result)
+        }
+
+        return menor
     }
 
 
-    private suspend fun obtemRotasSnv(
+
+
+    /**
+     * Consulta todos os buffers da janela ao mesmo tempo e retorna o menor buffer com resultado.
+     * As consultas de buffers maiores ainda em andamento são canceladas.
+     * @return Buffer e rotas encontradas, ou null se nenhum buffer da janela retornou rotas
+     */
+    private suspend fun sondaBuffersEmParalelo(
         lat : Double,
         lng : Double,
         dataReferencia : String,
-        startBuffer: Double,
-        maxBuffer: Double,
+        janela : List<Double>,
         retryCount: Int,
         retryDelayMs: Long,
-        bufferList : List<Double>?,
-    ): Pair<Double, List<RotaSNV>> {
-
-        var usedBuffer = 0.0
-        require(dataReferencia.isNotBlank()) { "Data referencia deve ser preenchida"}
-        require(startBuffer > 0) { "Buffer inicial deve ser positivo" }
-        require(startBuffer <= maxBuffer) { "Buffer max deve ser maior ou igual ao buffer inicial" }
-        require(retryCount >= 0) { "Número de tentativas deve ser maior ou igual a zero" }
-        require(retryDelayMs >= 0) { "RetryDelay deve ser maior ou igual a zero" }
+    ): Pair<Double, List<RotaSNV>>? = coroutineScope {
+        // A sequência reordenada pelo buffer adaptativo pode não estar em ordem crescente
+        val ordenada = janela.sorted()
+        val tentativas = ordenada.map { buffer ->
+            async { localizaRotas(lat, lng, buffer, dataReferencia, retryCount, retryDelayMs) }
+        }
 
-        for (buffer in bufferList ?: generateBufferSequence(startBuffer, maxBuffer, retryCount)) {
-            usedBuffer = buffer
-            val result = runSuspendableWithRetry(
-                callable = { ApiGeoClientImpl.fetchRota(lat, lng, buffer, dataReferencia) },
-                maxRetries = retryCount,
-                delayMs = retryDelayMs,
-                defaultValue = emptyList(),
-            )
+        // Aguarda em ordem crescente de buffer: um buffer maior só vence se todos os menores vierem vazios
+        for ((i, tentativa) in tentativas.withIndex()) {
+            val result = tentativa.await()
+            MetricasSNV.buffer(ordenada[i], result.isNotEmpty())
 
             if (result.isNotEmpty()) {
-                return Pair(usedBuffer, result)
+                tentativas.drop(i + 1).forEach { it.cancel() }
+                return@coroutineScope Pair(ordenada[i], result)
+            }
+        }
+
+        null
+    }
+
+
+
+
+    /**
+     * Consulta o localizarkm (com retry). Chamadas concorrentes com a mesma coordenada,
+     * buffer e data aguardam a mesma requisição ao invés de dispararem uma nova.
+     * @throws TempoEsgotadoException se o prazo da chamada se esgotar (mesmo aguardando outra chamada)
+     */
+    private suspend fun localizaRotas(
+        lat : Double,
+        lng : Double,
+        bufferM : Double,
+        dataReferencia : String,
+        retryCount : Int,
+        retryDelayMs : Long,
+    ): List<RotaSNV> {
+        return PrazoSNV.limita {
+            rotasEmAndamento.executa(ChaveRota(lat, lng, bufferM, dataReferencia)) {
+                resiliencia.executaOuPadrao(EndpointApiGeo.ROTAS, retryCount, retryDelayMs, emptyList()) {
+                    apiGeoClient.fetchRota(lat, lng, bufferM, dataReferencia)
+                }
             }
         }
+    }
+
+
+
+
+    /**
+     * Resolve os trechos de cada rota em paralelo (rotas de BRs diferentes podem exigir buscas
+     * distintas de trechos), mantendo a ordem das rotas no resultado.
+     */
+    private suspend fun resolveRotas(
+        lat : Double,
+        lng : Double,
+        rotas : List<RotaSNV>,
+        bufferKm : Double,
+        dataReferencia : String,
+        retryCount : Int,
+        retryDelayMs : Long,
+    ) : List<RotaResolvida> {
+        if (rotas.size <= 1) {
+            return rotas.map { toSnvResponse(lat, lng, it, bufferKm, dataReferencia, retryCount, retryDelayMs) }
+        }
 
-        return Pair(usedBuffer, emptyList())
+        return coroutineScope {
+            rotas.map { rota ->
+                async { toSnvResponse(lat, lng, rota, bufferKm, dataReferencia, retryCount, retryDelayMs) }
+            }.awaitAll()
+        }
     }
 
 
@@ -129,92 +882,154 @@ internal object ClientSNVImplementation {
         dataReferencia : String,
         retryCount : Int,
         retryDelayMs : Long,
-    ) : List<SNVResponse> {
-        var kmAcumulado = 0.0
+    ) : RotaResolvida {
+        val indice = obtemIndiceTrechos(rota.uf, rota.br, rota.sgTpTrecho, rota.versao,
+                                        dataReferencia, retryCount, retryDelayMs)
+        return toSnvResponse(lat, lng, rota, bufferKm, indice)
+    }
+
+
+
+    /**
+     * Respostas da rota a partir dos seus trechos
+     * @param indice Trechos da rota, ou null se não foram obtidos (a rota fica degradada)
+     */
+    private fun toSnvResponse(
+        lat : Double,
+        lng : Double,
+        rota : RotaSNV,
+        bufferKm: Double,
+        indice : IndiceTrechos?,
+    ) : RotaResolvida {
         val listaResponse = mutableListOf<SNVResponse>()
 
-        val trechoSnv : List<MiniTrechoSNV> =
-            cacheMiniTrechos.obtemCacheOrFetch(rota.uf, rota.br, rota.sgTpTrecho, dataReferencia
-            ) {
-                if ("B" != rota.sgTpTrecho) return@obtemCacheOrFetch emptyList()
-                runSuspendableWithRetry(
-                    callable = {
-                        ApiGeoClientImpl.fetchTrecho(
-                            rota.uf,
-                            rota.br,
-                            rota.sgTpTrecho,
-                            dataReferencia
-                        )
-                    },
-                    maxRetries = retryCount,
-                    delayMs = retryDelayMs,
-                    defaultValue = emptyList()
-                )
-            }
+        if (indice == null) {
+            return RotaResolvida(rota, IndiceTrechos.VAZIO, null,
+                                 mutableListOf(toSnvResponse(lat, lng, rota, null, null)), degradada = true)
+        }
 
-        val epsilon = 0.0001
-
-        for (trecho in trechoSnv) {
-            val inicioTrecho = kmAcumulado
-            kmAcumulado += trecho.extensao // final
-
-            val isExactMatch = rota.km >= inicioTrecho && rota.km <= kmAcumulado
-
-            val isApproximateMatch = !isExactMatch
-                                   && rota.km + epsilon >= inicioTrecho - bufferKm
-                                   && rota.km - epsilon <= kmAcumulado + bufferKm
-
-            if (isExactMatch || isApproximateMatch) {
-                listaResponse.add(
-                    SNVResponse(
-                        snv = trecho.trecho,
-                        versao = rota.versao,
-                        coincidencia = trecho.coincidencia,
-                        uf = rota.uf,
-                        br = rota.br,
-                        tipo = rota.sgTpTrecho,
-                        latitude = lat,
-                        longitude = lng,
-                        km = rota.km
-                    )
-                )
-            }
+        val proximos = indice.proximos(rota.km, bufferKm)
+        proximos.forEach { i ->
+            listaResponse.add(toSnvResponse(lat, lng, rota, indice.trecho(i), indice.coincidencia(i)))
         }
 
         if (listaResponse.isNotEmpty()) {
-            return listaResponse
+            return RotaResolvida(rota, indice, proximos, listaResponse)
         }
 
         // Tenta obter o ultimo trecho
-        trechoSnv.lastOrNull()?.let {
+        if (indice.tamanho > 0) {
             val toleranciaExcedente = 10.0
-            if (kmAcumulado + toleranciaExcedente >= rota.km) {
-                return mutableListOf(SNVResponse(
-                    snv = it.trecho,
-                    versao = rota.versao,
-                    coincidencia = it.coincidencia,
-                    uf = rota.uf,
-                    br = rota.br,
-                    tipo = rota.sgTpTrecho,
-                    latitude = lat,
-                    longitude = lng,
-                    km = rota.km
+            if (indice.extensaoTotal + toleranciaExcedente >= rota.km) {
+                val ultimo = indice.tamanho - 1
+                return RotaResolvida(rota, indice, null, mutableListOf(
+                    toSnvResponse(lat, lng, rota, indice.trecho(ultimo), indice.coincidencia(ultimo))
                 ))
             }
         }
 
         // Fallback - Retorna um trecho vazio
-        return mutableListOf(SNVResponse(
-            snv = null,
+        return RotaResolvida(rota, indice, null, mutableListOf(toSnvResponse(lat, lng, rota, null, null)))
+    }
+
+
+
+
+    /**
+     * Obtém os trechos da rota (do cache ou da API-Geo).
+     * @return Índice dos trechos, ou null se a busca falhar (retries esgotados, circuito aberto, espera
+     * no limitador excedida ou prazo da chamada esgotado). Falhas não são armazenadas no cache.
+     */
+    private suspend fun obtemIndiceTrechos(
+        uf : String,
+        br : String,
+        tipo : String,
+        versao : String?,
+        dataReferencia : String,
+        retryCount : Int,
+        retryDelayMs : Long,
+    ) : IndiceTrechos? {
+        return try {
+            PrazoSNV.limita { obtemTrechos(uf, br, tipo, versao, dataReferencia, retryCount, retryDelayMs) }
+
+        } catch (e : CancellationException) {
+            throw e
+
+        } catch (e : Exception) {
+            null
+        }
+    }
+
+
+
+    private suspend fun obtemTrechos(
+        uf : String,
+        br : String,
+        tipo : String,
+        versao : String?,
+        dataReferencia : String,
+        retryCount : Int,
+        retryDelayMs : Long,
+    ) : IndiceTrechos {
+        return cacheMiniTrechos.obtemCacheOrFetch(uf, br, tipo, dataReferencia) { validadores ->
+            if ("B" != tipo) return@obtemCacheOrFetch RespostaTrechos(emptyList(), null)
+
+            val disco = cacheDiscoTrechos?.takeIf { versao != null }
+            if (disco != null && validadores == null) {
+                val trechos = withContext(Dispatchers.IO) { disco.le(uf, br, tipo, versao!!) }
+                if (trechos != null) return@obtemCacheOrFetch RespostaTrechos(trechos, null)
+            }
+
+            val resposta = resiliencia.executa(EndpointApiGeo.TRECHOS, retryCount, retryDelayMs) {
+                apiGeoClient.fetchTrecho(
+                    uf,
+                    br,
+                    tipo,
+                    dataReferencia,
+                    validadores,
+                )
+            }
+
+            if (disco != null) withContext(Dispatchers.IO) { gravaEmDisco(disco, uf, br, tipo, versao!!, resposta) }
+            resposta
+        }
+    }
+
+
+
+    private fun gravaEmDisco(disco : CacheDiscoTrechos, uf : String, br : String, tipo : String, versao : String,
+                             resposta : RespostaTrechos) {
+        val trechos = resposta.trechos
+        if (trechos.isNullOrEmpty()) return
+
+        try {
+            disco.grava(uf, br, tipo, versao, trechos)
+        } catch (e : CommonException) {
+            // Falha ao gravar em disco não impede o uso dos trechos obtidos
+        }
+    }
+
+
+
+
+    private fun toSnvResponse(
+        lat : Double,
+        lng : Double,
+        rota : RotaSNV,
+        snv : String?,
+        coincidencia : String?,
+    ) : SNVResponse {
+        return SNVResponse(
+            snv = snv,
             versao = rota.versao,
-            coincidencia = null,
+            coincidencia = coincidencia,
             uf = rota.uf,
             br = rota.br,
             tipo = rota.sgTpTrecho,
             latitude = lat,
             longitude = lng,
             km = rota.km,
-        ))
+        )
     }
 
 
@@ -257,4 +1072,283 @@ internal object ClientSNVImplementation {
     }
 
 
+
+
+    /*
+     * Modo bloqueante (threads virtuais): as mesmas consultas, executadas na thread chamadora sem coroutines.
+     * O prazo da chamada é repassado explicitamente e limita o timeout de cada requisição, as esperas
+     * no limitador, nos caches e entre os retries. Lotes, pré-aquecimento e janelas de buffers
+     * distribuem os itens em threads virtuais próprias (veja [ThreadsVirtuais]).
+     */
+
+
+
+    internal fun obtemVersaoSnvAtualBloqueante(): String? {
+        return obtemVersaoSnvBloqueante(formataData(null))
+    }
+
+
+
+    internal fun obtemVersaoSnvBloqueante(dataReferencia: String): String? {
+        val data = parseData(dataReferencia)
+        versaoDaLinhaTempo(dataReferencia, data)?.let { return it }
+
+        val rotas = localizaRotasBloqueante(LAT_VERSAO, LNG_VERSAO, BUFFER_VERSAO, dataReferencia,
+                                            retryCount = 3, retryDelayMs = 1_000L, prazo = null)
+        return registraVersao(data, rotas)
+    }
+
+
+
+    internal fun obtemSnvsBloqueante(
+        lat : Double,
+        lng : Double,
+        uf : String?,
+        br : String?,
+        dataReferencia: String?,
+        startBuffer: Double,
+        maxBuffer: Double,
+        retryCount: Int,
+        retryDelayMs: Long,
+        bufferList : List<Double>?,
+        buffersParalelos : Int,
+        timeoutTotalMs : Long?,
+    ): List<SNVResponse> {
+        return obtemSnvsResolvidosBloqueante(lat, lng, uf, br, dataReferencia, startBuffer, maxBuffer,
+                                             retryCount, retryDelayMs, bufferList, buffersParalelos,
+                                             PrazoSNV.cria(timeoutTotalMs)).respostas
+    }
+
+
+
+    /**
+     * As coordenadas são distribuídas em threads virtuais, no máximo [paralelismo] ao mesmo tempo
+     */
+    internal fun obtemSnvsEmLoteBloqueante(
+        coordenadas : List<Coordenada>,
+        uf : String?,
+        br : String?,
+        dataReferencia: String?,
+        startBuffer: Double,
+        maxBuffer: Double,
+        retryCount: Int,
+        retryDelayMs: Long,
+        bufferList : List<Double>?,
+        paralelismo : Int,
+        buffersParalelos : Int,
+        timeoutTotalMs : Long?,
+    ): List<ResultadoLoteSNV> {
+        require(paralelismo > 0) { "Paralelismo deve ser positivo" }
+
+        val data = formataData(dataReferencia)
+        val prazo = PrazoSNV.cria(timeoutTotalMs)
+
+        return ThreadsVirtuais.executaTodos(coordenadas, paralelismo) { coordenada ->
+            resultadoLote(coordenada) {
+                obtemSnvsResolvidosBloqueante(coordenada.latitude, coordenada.longitude,
+                                              uf, br, data,
+                                              startBuffer, maxBuffer,
+                                              retryCount, retryDelayMs, bufferList,
+                                              buffersParalelos, prazo).respostas
+            }
+        }
+    }
+
+
+
+    internal fun obtemSnvsTrajetoBloqueante(
+        coordenadas : List<Coordenada>,
+        uf : String?,
+        br : String?,
+        dataReferencia: String?,
+        startBuffer: Double,
+        maxBuffer: Double,
+        retryCount: Int,
+        retryDelayMs: Long,
+        bufferList : List<Double>?,
+        distanciaMaximaM : Double,
+        timeoutTotalMs : Long?,
+    ): List<ResultadoLoteSNV> {
+        require(distanciaMaximaM >= 0) { "Distância máxima deve ser maior ou igual a zero" }
+
+        val data = formataData(dataReferencia)
+        val prazo = PrazoSNV.cria(timeoutTotalMs)
+
+        return percorreTrajeto(coordenadas, distanciaMaximaM) { coordenada ->
+            obtemSnvsResolvidosBloqueante(coordenada.latitude, coordenada.longitude,
+                                          uf, br, data,
+                                          startBuffer, maxBuffer,
+                                          retryCount, retryDelayMs, bufferList, 1, prazo)
+        }
+    }
+
+
+
+    /**
+     * As combinações são distribuídas em threads virtuais, no máximo [paralelismo] ao mesmo tempo
+     */
+    internal fun preaquecerCacheBloqueante(
+        ufs : List<String>,
+        brs : List<String>,
+        dataReferencia : String?,
+        paralelismo : Int,
+        retryCount : Int,
+        retryDelayMs : Long,
+        progresso : ProgressoPreaquecimento?,
+    ): Int {
+        require(paralelismo > 0) { "Paralelismo deve ser positivo" }
+
+        val data = formataData(dataReferencia)
+        val combinacoes = combinacoesPreaquecimento(ufs, brs)
+        val versao = if (cacheDiscoTrechos != null) obtemVersaoSnvBloqueante(data) else null
+        val concluidos = AtomicInteger()
+
+        val carregados = ThreadsVirtuais.executaTodos(combinacoes, paralelismo) { (uf, br) ->
+            val indice = obtemIndiceTrechosBloqueante(uf, br, "B", versao, data, retryCount, retryDelayMs, null)
+            progresso?.onProgresso(concluidos.incrementAndGet(), combinacoes.size)
+            indice != null && indice.tamanho > 0
+        }
+
+        return carregados.count { it }
+    }
+
+
+
+    private fun obtemSnvsResolvidosBloqueante(
+        lat : Double,
+        lng : Double,
+        uf : String?,
+        br : String?,
+        dataReferencia: String?,
+        startBuffer: Double,
+        maxBuffer: Double,
+        retryCount: Int,
+        retryDelayMs: Long,
+        bufferList : List<Double>?,
+        buffersParalelos : Int,
+        prazo : PrazoSNV?,
+    ): ResultadoSnvs {
+        val data = formataData(dataReferencia)
+
+        val buffersChave = bufferList ?: generateBufferSequence(startBuffer, maxBuffer, retryCount)
+        cacheRespostas?.obtem(lat, lng, data, uf, br, buffersChave)?.let { return ResultadoSnvs(it, null, 0.0) }
+
+        validaBuffers(data, startBuffer, maxBuffer, retryCount, retryDelayMs, buffersParalelos)
+        val (buffer, rotas) = procuraRotas(lat, lng, buffersChave, buffersParalelos,
+            verifica = { prazo?.verifica() },
+            sondaJanela = { sondaBuffersEmParaleloBloqueante(lat, lng, data, it, retryCount, retryDelayMs, prazo) },
+            localiza = { localizaRotasBloqueante(lat, lng, it, data, retryCount, retryDelayMs, prazo) })
+
+        if (rotas.isNotEmpty()) {
+            bufferAdaptativo?.registra(lat, lng, buffer)
+        }
+
+        // As rotas de um entroncamento são resolvidas em sequência: os trechos costumam estar em cache
+        val rotasResolvidas = rotas.map { rota ->
+            toSnvResponse(lat, lng, rota, buffer / 1000.0,
+                          obtemIndiceTrechosBloqueante(rota.uf, rota.br, rota.sgTpTrecho, rota.versao,
+                                                       data, retryCount, retryDelayMs, prazo))
+        }
+
+        return concluiSnvs(lat, lng, uf, br, data, buffersChave, buffer, rotasResolvidas, prazo?.atingido == true)
+    }
+
+
+
+    /**
+     * Como [sondaBuffersEmParalelo], com cada buffer consultado em uma thread virtual.
+     * As consultas de buffers maiores ainda em andamento são interrompidas.
+     */
+    private fun sondaBuffersEmParaleloBloqueante(
+        lat : Double,
+        lng : Double,
+        dataReferencia : String,
+        janela : List<Double>,
+        retryCount: Int,
+        retryDelayMs: Long,
+        prazo : PrazoSNV?,
+    ): Pair<Double, List<RotaSNV>>? {
+        return ThreadsVirtuais.primeiroAceito(janela.sorted(),
+            { buffer -> localizaRotasBloqueante(lat, lng, buffer, dataReferencia, retryCount, retryDelayMs, prazo) }
+        ) { buffer, result ->
+            MetricasSNV.buffer(buffer, result.isNotEmpty())
+            result.isNotEmpty()
+        }
+    }
+
+
+
+    private fun localizaRotasBloqueante(
+        lat : Double,
+        lng : Double,
+        bufferM : Double,
+        dataReferencia : String,
+        retryCount : Int,
+        retryDelayMs : Long,
+        prazo : PrazoSNV?,
+    ): List<RotaSNV> {
+        prazo?.verifica()
+
+        return rotasEmAndamento.executaBloqueante(ChaveRota(lat, lng, bufferM, dataReferencia), prazo) {
+            resiliencia.executaOuPadraoBloqueante(EndpointApiGeo.ROTAS, retryCount, retryDelayMs, prazo, emptyList()) {
+                apiGeoClient.fetchRotaBloqueante(lat, lng, bufferM, dataReferencia, prazo)
+            }
+        }
+    }
+
+
+
+    private fun obtemIndiceTrechosBloqueante(
+        uf : String,
+        br : String,
+        tipo : String,
+        versao : String?,
+        dataReferencia : String,
+        retryCount : Int,
+        retryDelayMs : Long,
+        prazo : PrazoSNV?,
+    ) : IndiceTrechos? {
+        return try {
+            prazo?.verifica()
+            obtemTrechosBloqueante(uf, br, tipo, versao, dataReferencia, retryCount, retryDelayMs, prazo)
+
+        } catch (e : InterruptedException) {
+            throw e
+
+        } catch (e : Exception) {
+            null
+        }
+    }
+
+
+
+    private fun obtemTrechosBloqueante(
+        uf : String,
+        br : String,
+        tipo : String,
+        versao : String?,
+        dataReferencia : String,
+        retryCount : Int,
+        retryDelayMs : Long,
+        prazo : PrazoSNV?,
+    ) : IndiceTrechos {
+        return cacheMiniTrechos.obtemCacheOrFetchBloqueante(uf, br, tipo, dataReferencia, prazo) { validadores ->
+            if ("B" != tipo) return@obtemCacheOrFetchBloqueante RespostaTrechos(emptyList(), null)
+
+            val disco = cacheDiscoTrechos?.takeIf { versao != null }
+            if (disco != null && validadores == null) {
+                val trechos = disco.le(uf, br, tipo, versao!!)
+                if (trechos != null) return@obtemCacheOrFetchBloqueante RespostaTrechos(trechos, null)
+            }
+
+            val resposta = resiliencia.executaBloqueante(EndpointApiGeo.TRECHOS, retryCount, retryDelayMs, prazo) {
+                apiGeoClient.fetchTrechoBloqueante(uf, br, tipo, dataReferencia, validadores, prazo)
+            }
+
+            if (disco != null) gravaEmDisco(disco, uf, br, tipo, versao!!, resposta)
+            resposta
+        }
+    }
+
+
 }
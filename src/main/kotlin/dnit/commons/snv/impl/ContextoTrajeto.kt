@@ -0,0 +1,136 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.geo.CalculoDistancia
+import dnit.commons.snv.SNVResponse
+import kotlin.math.cos
+import kotlin.math.hypot
+import kotlin.math.sign
+
+/**
+ * Contexto de um trajeto: o último ponto consultado na API-Geo (âncora), com suas rotas e trechos.
+ * Um ponto seguinte reaproveita as rotas e trechos da âncora se estiver a até a distância máxima dela e se,
+ * em todas as rotas, a janela de km alcançável a partir da âncora permanecer nos mesmos trechos do índice.
+ *
+ * O km do ponto reaproveitado é estimado projetando o deslocamento desde a âncora na direção do trajeto
+ * (da âncora anterior para a atual), no sentido em que o km de cada rota cresceu entre as duas âncoras.
+ * Sem uma âncora anterior na mesma rodovia o sentido é desconhecido e o ponto é consultado novamente.
+ */
+internal class ContextoTrajeto private constructor(
+    private val latitude : Double,
+    private val longitude : Double,
+    private val respostas : List<SNVResponse>,
+    private val rotas : List<RotaResolvida>,
+    private val bufferKm : Double,
+    private val direcaoX : Double,
+    private val direcaoY : Double,
+    private val sentidos : DoubleArray?, // Sinal da variação do km de cada rota ao avançar na direção do trajeto
+) {
+
+    // Rota de origem de cada resposta, para aplicar o km estimado da rota correspondente
+    private val rotaDaResposta = IntArray(respostas.size) { i ->
+        val resposta = respostas[i]
+        rotas.indexOfFirst {
+            it.rota.uf == resposta.uf && it.rota.br == resposta.br
+                && it.rota.sgTpTrecho == resposta.tipo && it.rota.km == resposta.km
+        }
+    }
+
+
+    /**
+     * Retorna o resultado da âncora com o km estimado para a coordenada,
+     * ou null se ela pode ter saído dos trechos da âncora
+     */
+    internal fun reaproveita(lat : Double, lng : Double, distanciaMaximaM : Double) : List<SNVResponse>? {
+        val sentidos = sentidos ?: return null
+        if (rotaDaResposta.any { it < 0 }) return null
+
+        val distancia = CalculoDistancia.distanciaEmMetros(latitude, longitude, lat, lng)
+        if (distancia > distanciaMaximaM) return null
+
+        // A distância percorrida na rodovia pode ser maior que a distância em linha reta (curvas)
+        val margemKm = distancia * FATOR_SINUOSIDADE / 1000.0
+
+        val permanece = rotas.all { resolvida ->
+            val km = resolvida.rota.km
+            resolvida.indice.proximos(km - margemKm, bufferKm).contentEquals(resolvida.proximos)
+                && resolvida.indice.proximos(km + margemKm, bufferKm).contentEquals(resolvida.proximos)
+        }
+        if (!permanece) return null
+
+        val (x, y) = deslocamentoM(latitude, longitude, lat, lng)
+        val avancoKm = (x * direcaoX + y * direcaoY) / 1000.0
+
+        return respostas.mapIndexed { i, it ->
+            val rota = rotaDaResposta[i]
+            val km = rotas[rota].rota.km + sentidos[rota] * avancoKm
+            SNVResponse(it.snv, it.versao, it.coincidencia, it.uf, it.br, it.tipo, lat, lng, km)
+        }
+    }
+
+
+
+    internal companion object {
+
+        private const val FATOR_SINUOSIDADE = 2.0
+
+
+        /**
+         * Cria o contexto da âncora, ou retorna null se o resultado não puder ser reaproveitado
+         * (sem rotas ou com alguma rota resolvida por fallback). Sem uma âncora [anterior] que indique
+         * a direção do trajeto e o sentido do km de cada rota, o contexto apenas serve de âncora anterior
+         * para o próximo ponto consultado.
+         */
+        internal fun de(
+            lat : Double,
+            lng : Double,
+            respostas : List<SNVResponse>,
+            rotas : List<RotaResolvida>,
+            bufferKm : Double,
+            anterior : ContextoTrajeto?,
+        ) : ContextoTrajeto? {
+            if (rotas.isEmpty() || rotas.any { it.proximos == null }) return null
+
+            val (x, y) = anterior?.let { deslocamentoM(it.latitude, it.longitude, lat, lng) } ?: (0.0 to 0.0)
+            val norma = hypot(x, y)
+            val sentidos = anterior?.takeIf { norma > 0.0 }?.let { sentidos(rotas, it) }
+
+            return ContextoTrajeto(lat, lng, respostas, rotas, bufferKm, x / norma, y / norma, sentidos)
+        }
+
+
+
+        /**
+         * Sinal da variação do km de cada rota desde a âncora [anterior], ou null se alguma rota
+         * não estava na âncora anterior ou manteve o mesmo km
+         */
+        private fun sentidos(rotas : List<RotaResolvida>, anterior : ContextoTrajeto) : DoubleArray? {
+            val sentidos = DoubleArray(rotas.size)
+
+            rotas.forEachIndexed { i, resolvida ->
+                val rota = resolvida.rota
+                val kmAnterior = anterior.rotas.firstOrNull {
+                    it.rota.uf == rota.uf && it.rota.br == rota.br && it.rota.sgTpTrecho == rota.sgTpTrecho
+                }?.rota?.km ?: return null
+
+                sentidos[i] = sign(rota.km - kmAnterior)
+                if (sentidos[i] == 0.0) return null
+            }
+
+            return sentidos
+        }
+
+
+
+        /**
+         * Deslocamento aproximado em metros (leste, norte) entre duas coordenadas próximas
+         */
+        private fun deslocamentoM(lat1 : Double, lng1 : Double, lat2 : Double, lng2 : Double) : Pair<Double, Double> {
+            val raio = CalculoDistancia.RAIO_TERRA_METROS
+            val x = Math.toRadians(lng2 - lng1) * cos(Math.toRadians((lat1 + lat2) / 2)) * raio
+            val y = Math.toRadians(lat2 - lat1) * raio
+            return x to y
+        }
+
+    }
+
+}
@@ -0,0 +1,65 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.exception.CommonException
+import java.io.BufferedInputStream
+import java.io.InputStream
+import java.util.zip.GZIPInputStream
+import java.util.zip.Inflater
+import java.util.zip.InflaterInputStream
+
+/**
+ * Decodifica o corpo das respostas HTTP de acordo com o cabeçalho Content-Encoding,
+ * descompactando em streaming à medida que o parser consome os dados.
+ */
+internal object DescompressaoHttp {
+
+    /**
+     * Valor enviado no cabeçalho Accept-Encoding
+     */
+    internal const val CODIFICACOES_ACEITAS = "gzip, deflate"
+
+    private const val TAMANHO_BUFFER = 8_192
+
+
+    /**
+     * Retorna o corpo decodificado. Codificações encadeadas são desfeitas na ordem inversa da aplicação.
+     * @throws CommonException se a codificação não for suportada
+     */
+    internal fun descompacta(corpo : InputStream, contentEncoding : String?) : InputStream {
+        if (contentEncoding.isNullOrBlank()) return corpo
+
+        return contentEncoding.split(',')
+            .map { it.trim().lowercase() }
+            .filter { it.isNotEmpty() && it != "identity" }
+            .foldRight(corpo) { codificacao, stream ->
+                when (codificacao) {
+                    "gzip", "x-gzip" -> GZIPInputStream(stream, TAMANHO_BUFFER)
+                    "deflate" -> inflate(stream)
+                    else -> {
+                        stream.close()
+                        throw CommonException("Content-Encoding não suportado: $codificacao")
+                    }
+                }
+            }
+    }
+
+
+
+    /**
+     * O padrão HTTP define "deflate" como o formato zlib, mas alguns servidores enviam o
+     * deflate puro (sem cabeçalho). O formato é identificado pelos dois primeiros bytes.
+     */
+    private fun inflate(stream : InputStream) : InputStream {
+        val buffered = BufferedInputStream(stream, TAMANHO_BUFFER)
+
+        buffered.mark(2)
+        val cmf = buffered.read()
+        val flg = buffered.read()
+        buffered.reset()
+
+        val zlib = cmf != -1 && flg != -1 && (cmf and 0x0F) == 8 && ((cmf shl 8) or flg) % 31 == 0
+
+        return InflaterInputStream(buffered, Inflater(!zlib), TAMANHO_BUFFER)
+    }
+
+}
@@ -0,0 +1,29 @@
+package dnit.commons.snv.impl
+
+import kotlinx.coroutines.CoroutineName
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.IO
+import kotlinx.coroutines.SupervisorJob
+
+/**
+ * Escopos compartilhados do cliente SNV. Falhas de uma tarefa não cancelam as demais.
+ */
+internal object EscopoSNV {
+
+    /**
+     * Tarefas em segundo plano (ex.: revalidação de caches)
+     */
+    internal val segundoPlano : CoroutineScope =
+        CoroutineScope(SupervisorJob() + Dispatchers.IO + CoroutineName("snv-segundo-plano"))
+
+
+
+    /**
+     * Consultas iniciadas pela API assíncrona (CompletableFuture) de [dnit.commons.snv.ClientSNV].
+     * As consultas apenas suspendem durante as requisições, por isso executam em [Dispatchers.Default].
+     */
+    internal val chamadas : CoroutineScope =
+        CoroutineScope(SupervisorJob() + Dispatchers.Default + CoroutineName("snv-chamadas"))
+
+}
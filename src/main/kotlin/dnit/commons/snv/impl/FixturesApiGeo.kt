@@ -0,0 +1,39 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.snv.EndpointApiGeo
+import dnit.commons.snv.RequisicaoApiGeo
+import java.nio.file.Path
+
+/**
+ * Convenção de nomes dos arquivos de fixtures da API-Geo, do mais para o menos específico.
+ */
+internal object FixturesApiGeo {
+
+    private val chaves = mapOf(
+        EndpointApiGeo.ROTAS to listOf("lat", "lng", "r", "data"),
+        EndpointApiGeo.TRECHOS to listOf("uf", "br", "tipo", "data"),
+    )
+
+    private val minimoChaves = mapOf(
+        EndpointApiGeo.ROTAS to 2,
+        EndpointApiGeo.TRECHOS to 3,
+    )
+
+
+
+    internal fun caminhos(diretorio : Path, requisicao : RequisicaoApiGeo) : List<Path> {
+        val pasta = diretorio.resolve(requisicao.endpoint.name.lowercase())
+        val valores = chaves.getValue(requisicao.endpoint).map { sanitiza(requisicao.parametros[it]) }
+
+        return (valores.size downTo minimoChaves.getValue(requisicao.endpoint)).map { quantidade ->
+            pasta.resolve(valores.take(quantidade).joinToString("_") + ".json")
+        }
+    }
+
+
+
+    private fun sanitiza(valor : String?) : String {
+        return (valor ?: "").uppercase().replace(Regex("[^A-Z0-9.\\-]"), "_")
+    }
+
+}
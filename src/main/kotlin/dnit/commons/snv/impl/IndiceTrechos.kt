@@ -0,0 +1,119 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.model.internal.MiniTrechoSNV
+
+/**
+ * Índice colunar dos trechos de uma BR, construído uma única vez ao carregar o cache.
+ * Mantém o km acumulado (soma de prefixos das extensões), os códigos dos trechos e
+ * as coincidências em arrays, permitindo localizar os trechos de um km por busca binária.
+ */
+internal class IndiceTrechos private constructor(
+    private val kmAcumulado : DoubleArray, // kmAcumulado[i] = início do trecho i; kmAcumulado[n] = extensão total
+    private val trechos : Array<String>,
+    private val coincidencias : Array<String?>,
+    private val ordenado : Boolean,
+) {
+
+    internal val tamanho : Int
+        get() = trechos.size
+
+    internal val extensaoTotal : Double
+        get() = kmAcumulado[trechos.size]
+
+
+    internal fun trecho(indice : Int) : String = trechos[indice]
+
+    internal fun coincidencia(indice : Int) : String? = coincidencias[indice]
+
+    internal fun inicio(indice : Int) : Double = kmAcumulado[indice]
+
+    internal fun fim(indice : Int) : Double = kmAcumulado[indice + 1]
+
+
+
+    /**
+     * Executa [action] para cada trecho que contém o [km] ou está a até [bufferKm] (+ [epsilon]) dele,
+     * em ordem crescente de km. Equivale a percorrer todos os trechos, mas em O(log n + k).
+     */
+    internal fun forEachProximo(
+        km : Double,
+        bufferKm : Double,
+        epsilon : Double,
+        action : (Int) -> Unit,
+    ) {
+        val primeiro = if (ordenado) primeiroFimAlcancado(km, bufferKm, epsilon) else 0
+
+        for (i in primeiro until tamanho) {
+            val comecaAntes = km + epsilon >= inicio(i) - bufferKm
+
+            // Com extensões não negativas nenhum trecho seguinte pode ser alcançado
+            if (!comecaAntes && ordenado) break
+
+            if (comecaAntes && km - epsilon <= fim(i) + bufferKm) {
+                action(i)
+            }
+        }
+    }
+
+
+
+    /**
+     * Índices dos trechos próximos ao [km] (veja [forEachProximo]), com a tolerância padrão [EPSILON_KM]
+     */
+    internal fun proximos(km : Double, bufferKm : Double) : IntArray {
+        val indices = ArrayList<Int>(2)
+        forEachProximo(km, bufferKm, EPSILON_KM) { indices.add(it) }
+        return indices.toIntArray()
+    }
+
+
+
+    /**
+     * Primeiro trecho cujo fim (+ buffer) alcança o km (- epsilon)
+     */
+    private fun primeiroFimAlcancado(km : Double, bufferKm : Double, epsilon : Double) : Int {
+        var low = 0
+        var high = tamanho
+
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (km - epsilon <= fim(mid) + bufferKm) high = mid else low = mid + 1
+        }
+
+        return low
+    }
+
+
+
+    internal companion object {
+
+        /**
+         * Tolerância para erros de arredondamento na comparação de kms
+         */
+        internal const val EPSILON_KM = 0.0001
+
+        internal val VAZIO = de(emptyList())
+
+
+        internal fun de(miniTrechos : List<MiniTrechoSNV>) : IndiceTrechos {
+            val n = miniTrechos.size
+            val kmAcumulado = DoubleArray(n + 1)
+            val trechos = arrayOfNulls<String>(n)
+            val coincidencias = arrayOfNulls<String>(n)
+            var ordenado = true
+
+            for ((i, trecho) in miniTrechos.withIndex()) {
+                // Soma na mesma ordem do percurso linear, preservando os mesmos valores de ponto flutuante
+                kmAcumulado[i + 1] = kmAcumulado[i] + trecho.extensao
+                trechos[i] = trecho.trecho
+                coincidencias[i] = trecho.coincidencia
+                if (!(trecho.extensao >= 0.0)) ordenado = false
+            }
+
+            @Suppress("UNCHECKED_CAST")
+            return IndiceTrechos(kmAcumulado, trechos as Array<String>, coincidencias, ordenado)
+        }
+
+    }
+
+}
@@ -0,0 +1,319 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.exception.CommonException
+import java.io.Closeable
+import java.io.Reader
+
+/**
+ * Tokenizador JSON em passo único, sem dependências externas.
+ * Lê diretamente do [Reader] com um buffer fixo, evitando materializar o payload inteiro
+ * em memória. Utilizado para converter as respostas da API-Geo sem gerar cópias intermediárias.
+ */
+internal class JsonStreamReader(private val reader : Reader) : Closeable {
+
+    internal enum class Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY,
+        NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private enum class Scope {
+        EMPTY_DOCUMENT, NONEMPTY_DOCUMENT,
+        EMPTY_ARRAY, NONEMPTY_ARRAY,
+        EMPTY_OBJECT, DANGLING_NAME, NONEMPTY_OBJECT
+    }
+
+    private val buffer = CharArray(8_192)
+    private var pos = 0
+    private var limit = 0
+
+    private val stack = ArrayList<Scope>().apply { add(Scope.EMPTY_DOCUMENT) }
+    private var peeked : Token? = null
+    private val sb = StringBuilder()
+
+
+
+    internal fun peek() : Token {
+        peeked?.let { return it }
+
+        val token = when (stack.last()) {
+            Scope.EMPTY_ARRAY -> {
+                replaceTop(Scope.NONEMPTY_ARRAY)
+                if (nextNonWhitespace() == ']'.code) Token.END_ARRAY else peekValue()
+            }
+
+            Scope.NONEMPTY_ARRAY -> when (nextNonWhitespace()) {
+                ']'.code -> Token.END_ARRAY
+                ','.code -> { pos++; nextNonWhitespace(); peekValue() }
+                else -> throw syntaxError("Esperado ',' ou ']'")
+            }
+
+            Scope.EMPTY_OBJECT, Scope.NONEMPTY_OBJECT -> {
+                var c = nextNonWhitespace()
+                if (c == '}'.code) {
+                    Token.END_OBJECT
+                } else {
+                    if (stack.last() == Scope.NONEMPTY_OBJECT) {
+                        if (c != ','.code) throw syntaxError("Esperado ',' ou '}'")
+                        pos++
+                        c = nextNonWhitespace()
+                    }
+                    if (c != '"'.code) throw syntaxError("Esperado nome de campo")
+                    replaceTop(Scope.DANGLING_NAME)
+                    Token.NAME
+                }
+            }
+
+            Scope.DANGLING_NAME -> {
+                if (nextNonWhitespace() != ':'.code) throw syntaxError("Esperado ':'")
+                pos++
+                replaceTop(Scope.NONEMPTY_OBJECT)
+                nextNonWhitespace()
+                peekValue()
+            }
+
+            Scope.EMPTY_DOCUMENT -> {
+                replaceTop(Scope.NONEMPTY_DOCUMENT)
+                if (nextNonWhitespace() == -1) Token.END_DOCUMENT else peekValue()
+            }
+
+            Scope.NONEMPTY_DOCUMENT -> {
+                if (nextNonWhitespace() != -1) throw syntaxError("Conteúdo após o fim do documento")
+                Token.END_DOCUMENT
+            }
+        }
+
+        peeked = token
+        return token
+    }
+
+
+
+    internal fun hasNext() : Boolean {
+        val token = peek()
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT
+    }
+
+
+
+    internal fun beginObject() {
+        expect(Token.BEGIN_OBJECT)
+        pos++
+        stack.add(Scope.EMPTY_OBJECT)
+    }
+
+
+
+    internal fun endObject() {
+        expect(Token.END_OBJECT)
+        pos++
+        stack.removeAt(stack.size - 1)
+    }
+
+
+
+    internal fun beginArray() {
+        expect(Token.BEGIN_ARRAY)
+        pos++
+        stack.add(Scope.EMPTY_ARRAY)
+    }
+
+
+
+    internal fun endArray() {
+        expect(Token.END_ARRAY)
+        pos++
+        stack.removeAt(stack.size - 1)
+    }
+
+
+
+    internal fun nextName() : String {
+        expect(Token.NAME)
+        return readString()
+    }
+
+
+
+    /**
+     * Retorna o valor escalar atual como texto (números mantêm a representação original).
+     * Para `null` retorna null. Objetos e arrays são ignorados e também retornam null.
+     */
+    internal fun nextScalarOrNull() : String? {
+        return when (peek()) {
+            Token.STRING -> { peeked = null; readString() }
+            Token.NUMBER -> { peeked = null; readLiteral() }
+            Token.BOOLEAN -> { peeked = null; readKeyword("true", "false") }
+            Token.NULL -> { peeked = null; readKeyword("null"); null }
+            else -> { skipValue(); null }
+        }
+    }
+
+
+
+    internal fun skipValue() {
+        var depth = 0
+        do {
+            when (peek()) {
+                Token.BEGIN_OBJECT -> { beginObject(); depth++ }
+                Token.BEGIN_ARRAY -> { beginArray(); depth++ }
+                Token.END_OBJECT -> { endObject(); depth-- }
+                Token.END_ARRAY -> { endArray(); depth-- }
+                Token.NAME -> nextName()
+                Token.STRING, Token.NUMBER, Token.BOOLEAN, Token.NULL -> nextScalarOrNull()
+                Token.END_DOCUMENT -> throw syntaxError("Fim inesperado do documento")
+            }
+        } while (depth > 0)
+    }
+
+
+
+    override fun close() {
+        reader.close()
+    }
+
+
+
+    private fun peekValue() : Token {
+        return when (val c = current()) {
+            '{'.code -> Token.BEGIN_OBJECT
+            '['.code -> Token.BEGIN_ARRAY
+            '"'.code -> Token.STRING
+            't'.code, 'f'.code -> Token.BOOLEAN
+            'n'.code -> Token.NULL
+            -1 -> throw syntaxError("Fim inesperado do documento")
+            else -> if (c == '-'.code || (c >= '0'.code && c <= '9'.code)) Token.NUMBER
+                    else throw syntaxError("Valor inesperado '${c.toChar()}'")
+        }
+    }
+
+
+
+    private fun expect(token : Token) {
+        val actual = peek()
+        if (actual != token) throw syntaxError("Esperado $token mas encontrado $actual")
+        peeked = null
+    }
+
+
+
+    private fun readString() : String {
+        pos++ // aspas de abertura
+        sb.setLength(0)
+
+        while (true) {
+            if (pos >= limit && !fill()) throw syntaxError("String não terminada")
+
+            // Copia blocos sem escape de uma só vez
+            val start = pos
+            while (pos < limit) {
+                val c = buffer[pos]
+                if (c == '"' || c == '\\') break
+                pos++
+            }
+            sb.appendRange(buffer, start, pos)
+
+            if (pos >= limit) continue
+
+            val c = buffer[pos++]
+            if (c == '"') return sb.toString()
+            sb.append(readEscape())
+        }
+    }
+
+
+
+    private fun readEscape() : Char {
+        if (pos >= limit && !fill()) throw syntaxError("Escape não terminado")
+
+        return when (val c = buffer[pos++]) {
+            '"', '\\', '/' -> c
+            'b' -> '\b'
+            'f' -> '\u000C'
+            'n' -> '\n'
+            'r' -> '\r'
+            't' -> '\t'
+            'u' -> {
+                var value = 0
+                repeat(4) {
+                    if (pos >= limit && !fill()) throw syntaxError("Escape unicode não terminado")
+                    val digit = Character.digit(buffer[pos++], 16)
+                    if (digit == -1) throw syntaxError("Escape unicode inválido")
+                    value = (value shl 4) or digit
+                }
+                value.toChar()
+            }
+            else -> throw syntaxError("Escape inválido '\\$c'")
+        }
+    }
+
+
+
+    /**
+     * Lê números e literais (true/false/null) até o próximo delimitador
+     */
+    private fun readLiteral() : String {
+        sb.setLength(0)
+
+        while (true) {
+            if (pos >= limit && !fill()) break
+            val c = buffer[pos]
+            if (c == ',' || c == '}' || c == ']' || c == ':' || c.isWhitespace()) break
+            sb.append(c)
+            pos++
+        }
+
+        return sb.toString()
+    }
+
+
+
+    /**
+     * Lê um literal (true/false/null) verificando-o por completo, e não apenas pelo primeiro caractere
+     */
+    private fun readKeyword(vararg validos : String) : String {
+        val literal = readLiteral()
+        if (literal !in validos) throw syntaxError("Literal inválido '$literal'")
+        return literal
+    }
+
+
+
+    private fun nextNonWhitespace() : Int {
+        while (true) {
+            if (pos >= limit && !fill()) return -1
+            val c = buffer[pos]
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return c.code
+            pos++
+        }
+    }
+
+
+
+    private fun current() : Int {
+        if (pos >= limit && !fill()) return -1
+        return buffer[pos].code
+    }
+
+
+
+    private fun fill() : Boolean {
+        val read = reader.read(buffer, 0, buffer.size)
+        if (read <= 0) return false
+        pos = 0
+        limit = read
+        return true
+    }
+
+
+
+    private fun replaceTop(scope : Scope) {
+        stack[stack.size - 1] = scope
+    }
+
+
+
+    private fun syntaxError(message : String) : CommonException {
+        return CommonException("JSON inválido: $message")
+    }
+
+}
@@ -0,0 +1,303 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.exception.CommonException
+import dnit.commons.exception.TempoEsgotadoException
+import dnit.commons.snv.EstatisticasLimitador
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.IO
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.future.await
+import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeoutOrNull
+
+/**
+ * Limita as chamadas à API-Geo por taxa (token bucket) e por concorrência (bulkhead).
+ * Chamadas acima do limite aguardam em fila por até [maxEsperaMs] ao invés de serem
+ * rejeitadas imediatamente. As chamadas suspensas liberadas executam em um dispatcher dedicado
+ * com paralelismo limitado a [maxConcorrencia]; as bloqueantes, na própria thread chamadora.
+ * As vagas são compartilhadas entre os dois tipos de chamada, em ordem de chegada.
+ *
+ * @param requisicoesPorSegundo Taxa máxima de chamadas. Se nulo, não há limite de taxa
+ * @param rajada Quantidade de chamadas que podem ser feitas de uma vez após um período ocioso
+ * @param maxConcorrencia Quantidade máxima de chamadas simultâneas
+ * @param maxEsperaMs Tempo máximo de espera na fila
+ * @param relogio Fonte de tempo em nanossegundos (substituível em testes)
+ */
+internal class LimitadorApiGeo(
+    private val requisicoesPorSegundo : Double? = null,
+    private val rajada : Int = 1,
+    private val maxConcorrencia : Int = 64,
+    private val maxEsperaMs : Long = 30_000L,
+    private val relogio : () -> Long = System::nanoTime,
+) {
+
+    private val dispatcher : CoroutineDispatcher
+
+    private val lock = Any()
+    private var tokens : Double = rajada.toDouble()
+    private var ultimaRecargaNanos : Long = relogio()
+
+    // Vagas do bulkhead: cada espera é um futuro completado quando outra chamada libera a sua vaga
+    private val lockVagas = Any()
+    private var vagasLivres : Int = maxConcorrencia
+    private val filaVagas = ArrayDeque<CompletableFuture<Unit>>()
+
+    private val emEspera = AtomicInteger()
+    private val emExecucao = AtomicInteger()
+    private val admitidas = AtomicLong()
+    private val esperasExcedidas = AtomicLong()
+    private val esperaTotalNanos = AtomicLong()
+    private val esperaMaximaNanos = AtomicLong()
+
+
+    init {
+        require(requisicoesPorSegundo == null || requisicoesPorSegundo > 0) { "Requisições por segundo deve ser positivo" }
+        require(rajada > 0) { "Rajada deve ser positiva" }
+        require(maxConcorrencia > 0) { "Concorrência máxima deve ser positiva" }
+        require(maxEsperaMs >= 0) { "Tempo máximo de espera deve ser maior ou igual a zero" }
+
+        dispatcher = Dispatchers.IO.limitedParallelism(maxConcorrencia)
+    }
+
+
+
+    /**
+     * Aguarda vaga e token e executa [block] no dispatcher do bulkhead
+     * @throws CommonException se a espera ultrapassar [maxEsperaMs]
+     */
+    internal suspend fun <T> executa(block : suspend () -> T) : T {
+        val inicio = relogio()
+        emEspera.incrementAndGet()
+
+        val admitida = try {
+            withTimeoutOrNull(maxEsperaMs) {
+                aguardaVaga()
+                try {
+                    aguardaToken()
+                } catch (e : Throwable) {
+                    liberaVaga()
+                    throw e
+                }
+                true
+            }
+        } finally {
+            emEspera.decrementAndGet()
+        }
+
+        if (admitida == null) throw esperaExcedida(null)
+
+        registraEspera(relogio() - inicio)
+        emExecucao.incrementAndGet()
+
+        try {
+            return withContext(dispatcher) { block() }
+
+        } finally {
+            emExecucao.decrementAndGet()
+            liberaVaga()
+        }
+    }
+
+
+
+    /**
+     * Como [executa], aguardando vaga e token com a thread atual bloqueada e executando [block] nela.
+     * A espera também é limitada pelo tempo restante de [prazo].
+     * @throws CommonException se a espera ultrapassar [maxEsperaMs]
+     * @throws TempoEsgotadoException se o prazo se esgotar durante a espera
+     */
+    internal fun <T> executaBloqueante(prazo : PrazoSNV?, block : () -> T) : T {
+        val inicio = relogio()
+        emEspera.incrementAndGet()
+
+        try {
+            aguardaVagaBloqueante(inicio, prazo)
+            try {
+                aguardaTokenBloqueante(inicio, prazo)
+            } catch (e : Throwable) {
+                liberaVaga()
+                throw e
+            }
+        } finally {
+            emEspera.decrementAndGet()
+        }
+
+        registraEspera(relogio() - inicio)
+        emExecucao.incrementAndGet()
+
+        try {
+            return block()
+
+        } finally {
+            emExecucao.decrementAndGet()
+            liberaVaga()
+        }
+    }
+
+
+
+    internal fun estatisticas() : EstatisticasLimitador {
+        val total = admitidas.get()
+        return EstatisticasLimitador(
+            emEspera = emEspera.get(),
+            emExecucao = emExecucao.get(),
+            admitidas = total,
+            esperasExcedidas = esperasExcedidas.get(),
+            esperaMediaMs = if (total == 0L) 0.0 else esperaTotalNanos.get() / 1_000_000.0 / total,
+            esperaMaximaMs = esperaMaximaNanos.get() / 1_000_000.0,
+        )
+    }
+
+
+
+    private suspend fun aguardaVaga() {
+        val vaga = solicitaVaga()
+        try {
+            vaga.await()
+        } catch (e : Throwable) {
+            desisteDaVaga(vaga)
+            throw e
+        }
+    }
+
+
+
+    private fun aguardaVagaBloqueante(inicio : Long, prazo : PrazoSNV?) {
+        val vaga = solicitaVaga()
+        try {
+            vaga.get(esperaPermitidaMs(inicio, prazo), TimeUnit.MILLISECONDS)
+
+        } catch (e : TimeoutException) {
+            desisteDaVaga(vaga)
+            throw esperaExcedida(prazo)
+
+        } catch (e : InterruptedException) {
+            desisteDaVaga(vaga)
+            throw e
+        }
+    }
+
+
+
+    /**
+     * Ocupa uma vaga livre, ou entra no fim da fila quando não houver vaga (ou já houver espera)
+     */
+    private fun solicitaVaga() : CompletableFuture<Unit> {
+        synchronized(lockVagas) {
+            if (vagasLivres > 0 && filaVagas.isEmpty()) {
+                vagasLivres--
+                return CompletableFuture.completedFuture(Unit)
+            }
+            return CompletableFuture<Unit>().also { filaVagas.addLast(it) }
+        }
+    }
+
+
+
+    /**
+     * Passa a vaga para a próxima espera ainda ativa da fila, ou a devolve
+     */
+    private fun liberaVaga() {
+        while (true) {
+            val proxima = synchronized(lockVagas) {
+                filaVagas.removeFirstOrNull() ?: run {
+                    vagasLivres++
+                    return
+                }
+            }
+            if (proxima.complete(Unit)) return
+        }
+    }
+
+
+
+    /**
+     * Abandona a espera. Se a vaga já tiver sido concedida, ela é liberada.
+     */
+    private fun desisteDaVaga(vaga : CompletableFuture<Unit>) {
+        synchronized(lockVagas) { filaVagas.remove(vaga) }
+        if (!vaga.cancel(false)) liberaVaga()
+    }
+
+
+
+    private suspend fun aguardaToken() {
+        while (true) {
+            val esperaNanos = reservaToken()
+            if (esperaNanos == 0L) return
+            delay((esperaNanos + 999_999) / 1_000_000)
+        }
+    }
+
+
+
+    /**
+     * Aguarda o token com [Thread.sleep], falhando de imediato se a espera não couber no tempo permitido
+     */
+    private fun aguardaTokenBloqueante(inicio : Long, prazo : PrazoSNV?) {
+        while (true) {
+            val esperaNanos = reservaToken()
+            if (esperaNanos == 0L) return
+
+            val esperaMs = (esperaNanos + 999_999) / 1_000_000
+            if (esperaMs > esperaPermitidaMs(inicio, prazo)) throw esperaExcedida(prazo)
+            Thread.sleep(esperaMs)
+        }
+    }
+
+
+
+    /**
+     * Consome um token, se disponível
+     * @return Zero se o token foi consumido, ou o tempo até haver um token disponível
+     */
+    private fun reservaToken() : Long {
+        val taxa = requisicoesPorSegundo ?: return 0L
+
+        synchronized(lock) {
+            val agora = relogio()
+            tokens = minOf(rajada.toDouble(), tokens + (agora - ultimaRecargaNanos) * taxa / 1_000_000_000)
+            ultimaRecargaNanos = agora
+
+            if (tokens >= 1.0) {
+                tokens -= 1.0
+                return 0L
+            }
+            return ((1.0 - tokens) / taxa * 1_000_000_000).toLong()
+        }
+    }
+
+
+
+    /**
+     * Tempo de espera ainda permitido desde [inicio], limitado pelo tempo restante de [prazo]
+     */
+    private fun esperaPermitidaMs(inicio : Long, prazo : PrazoSNV?) : Long {
+        val restante = maxOf(0L, maxEsperaMs - (relogio() - inicio) / 1_000_000)
+        return if (prazo == null) restante else minOf(restante, prazo.restanteMs())
+    }
+
+
+
+    private fun esperaExcedida(prazo : PrazoSNV?) : Exception {
+        if (prazo != null && prazo.esgotado()) return prazo.esgotou()
+
+        esperasExcedidas.incrementAndGet()
+        return CommonException("Tempo máximo de espera ($maxEsperaMs ms) para chamar a API-Geo excedido")
+    }
+
+
+
+    private fun registraEspera(esperaNanos : Long) {
+        admitidas.incrementAndGet()
+        esperaTotalNanos.addAndGet(esperaNanos)
+        esperaMaximaNanos.accumulateAndGet(esperaNanos, ::maxOf)
+    }
+
+}
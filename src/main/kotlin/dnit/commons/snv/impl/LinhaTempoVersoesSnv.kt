@@ -0,0 +1,120 @@
+package dnit.commons.snv.impl
+
+import java.time.LocalDate
+import java.util.TreeMap
+
+/**
+ * Linha do tempo local das versões do SNV, preenchida a partir das respostas da API-Geo.
+ * Como as versões do SNV se sucedem no tempo, uma data entre duas observações com a mesma
+ * versão pertence a essa versão e é respondida localmente. Apenas datas fora dos intervalos
+ * conhecidos (ou cujas observações vizinhas expiraram) precisam de uma nova consulta.
+ *
+ * @param ttlMs Tempo de validade de cada observação
+ * @param maxObsoletoMs Tempo após a expiração em que a observação ainda pode ser retornada por [consultaObsoleta]
+ * @param relogio Fonte de tempo em nanossegundos (substituível em testes)
+ */
+internal class LinhaTempoVersoesSnv(
+    private val ttlMs : Long = 21_600_000L,
+    private val maxObsoletoMs : Long? = null,
+    private val relogio : () -> Long = System::nanoTime,
+) {
+
+    private class Observacao(val versao : String, val obtidaEmNanos : Long)
+
+    private val lock = Any()
+    private val observacoes = TreeMap<LocalDate, Observacao>()
+
+
+    init {
+        require(ttlMs > 0) { "TTL da linha do tempo deve ser positivo" }
+        require(maxObsoletoMs == null || maxObsoletoMs > 0) { "Tempo máximo obsoleto deve ser positivo" }
+    }
+
+
+
+    /**
+     * Retorna a versão para a data, se ela estiver em um intervalo conhecido
+     */
+    internal fun consulta(data : LocalDate) : String? {
+        synchronized(lock) { return consulta(data, ::isValida) }
+    }
+
+
+
+    /**
+     * Como [consulta], mas aceita observações expiradas há menos de [maxObsoletoMs].
+     * O chamador deve revalidar a data, pois a versão retornada pode estar desatualizada.
+     */
+    internal fun consultaObsoleta(data : LocalDate) : String? {
+        if (maxObsoletoMs == null) return null
+        synchronized(lock) { return consulta(data, ::isUtilizavel) }
+    }
+
+
+
+    internal fun registra(data : LocalDate, versao : String) {
+        synchronized(lock) {
+            observacoes.values.removeIf { !isUtilizavel(it) }
+            observacoes[data] = Observacao(versao, relogio())
+            removeRedundantes(data)
+        }
+    }
+
+
+
+    internal fun tamanho() : Int = synchronized(lock) { observacoes.size }
+
+
+
+    private fun consulta(data : LocalDate, aceita : (Observacao) -> Boolean) : String? {
+        val anterior = observacoes.floorEntry(data)?.takeIf { aceita(it.value) } ?: return null
+        if (anterior.key == data) return anterior.value.versao
+
+        val posterior = observacoes.ceilingEntry(data)?.takeIf { aceita(it.value) } ?: return null
+        return anterior.value.versao.takeIf { it == posterior.value.versao }
+    }
+
+
+
+    /**
+     * Mantém apenas as bordas de cada intervalo: uma observação entre duas outras
+     * com a mesma versão não acrescenta informação. Apenas bordas válidas (não expiradas)
+     * tornam uma observação redundante, para não trocar uma observação nova por bordas obsoletas.
+     */
+    private fun removeRedundantes(data : LocalDate) {
+        val versao = observacoes[data]?.versao ?: return
+
+        fun isBorda(entrada : Map.Entry<LocalDate, Observacao>?) : Boolean {
+            return entrada != null && entrada.value.versao == versao && isValida(entrada.value)
+        }
+
+        // A própria observação é interna a um intervalo já conhecido
+        if (isBorda(observacoes.lowerEntry(data)) && isBorda(observacoes.higherEntry(data))) {
+            observacoes.remove(data)
+            return
+        }
+
+        val anterior = observacoes.lowerEntry(data)
+        if (anterior != null && anterior.value.versao == versao && isBorda(observacoes.lowerEntry(anterior.key))) {
+            observacoes.remove(anterior.key)
+        }
+
+        val posterior = observacoes.higherEntry(data)
+        if (posterior != null && posterior.value.versao == versao && isBorda(observacoes.higherEntry(posterior.key))) {
+            observacoes.remove(posterior.key)
+        }
+    }
+
+
+
+    private fun isValida(observacao : Observacao) : Boolean {
+        return relogio() - observacao.obtidaEmNanos < ttlMs * 1_000_000
+    }
+
+
+
+    private fun isUtilizavel(observacao : Observacao) : Boolean {
+        return relogio() - observacao.obtidaEmNanos < (ttlMs + (maxObsoletoMs ?: 0L)) * 1_000_000
+    }
+
+}
@@ -0,0 +1,68 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.snv.EndpointApiGeo
+import dnit.commons.snv.EventoCache
+import dnit.commons.snv.MetricasSNVListener
+import dnit.commons.snv.TipoCache
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Distribui os eventos de métricas para os [MetricasSNVListener] registrados.
+ * Sem listeners registrados o custo é apenas a verificação de uma lista vazia.
+ * Exceções lançadas por listeners são ignoradas para não afetar as consultas.
+ */
+internal object MetricasSNV {
+
+    private val listeners = CopyOnWriteArrayList<MetricasSNVListener>()
+
+
+
+    internal fun registra(listener : MetricasSNVListener) {
+        listeners.addIfAbsent(listener)
+    }
+
+
+
+    internal fun remove(listener : MetricasSNVListener) {
+        listeners.remove(listener)
+    }
+
+
+
+    internal fun requisicao(endpoint : EndpointApiGeo, duracaoNanos : Long, status : Int) {
+        notifica { it.onRequisicao(endpoint, duracaoNanos, status) }
+    }
+
+
+
+    internal fun retry(endpoint : EndpointApiGeo) {
+        notifica { it.onRetry(endpoint) }
+    }
+
+
+
+    internal fun buffer(buffer : Double, encontrou : Boolean) {
+        notifica { it.onBuffer(buffer, encontrou) }
+    }
+
+
+
+    internal fun cache(cache : TipoCache, evento : EventoCache) {
+        notifica { it.onCache(cache, evento) }
+    }
+
+
+
+    private inline fun notifica(evento : (MetricasSNVListener) -> Unit) {
+        if (listeners.isEmpty()) return
+
+        for (listener in listeners) {
+            try {
+                evento(listener)
+            } catch (e : Exception) {
+                // Métricas nunca devem interromper uma consulta
+            }
+        }
+    }
+
+}
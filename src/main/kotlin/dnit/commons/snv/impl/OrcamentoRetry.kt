@@ -0,0 +1,52 @@
+package dnit.commons.snv.impl
+
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Orçamento global de retries.
+ * Cada requisição original deposita [proporcao] tokens (até [maximo]) e cada retry consome um token.
+ * Assim, os retries ficam limitados a uma fração do tráfego e não multiplicam a carga
+ * sobre a API-Geo enquanto ela estiver degradada.
+ */
+internal class OrcamentoRetry(
+    private val proporcao : Double = 0.2,
+    private val maximo : Double = 100.0,
+) {
+
+    private val lock = Any()
+    private var tokens = maximo
+    private val negados = AtomicLong()
+
+
+    init {
+        require(proporcao >= 0) { "Proporção de retries deve ser maior ou igual a zero" }
+        require(maximo >= 1) { "Máximo de tokens de retry deve ser maior ou igual a um" }
+    }
+
+
+
+    internal fun registraRequisicao() {
+        synchronized(lock) { tokens = minOf(maximo, tokens + proporcao) }
+    }
+
+
+
+    internal fun consomeRetry() : Boolean {
+        synchronized(lock) {
+            if (tokens >= 1.0) {
+                tokens -= 1.0
+                return true
+            }
+        }
+
+        negados.incrementAndGet()
+        return false
+    }
+
+
+
+    internal fun tokens() : Double = synchronized(lock) { tokens }
+
+    internal fun negados() : Long = negados.get()
+
+}
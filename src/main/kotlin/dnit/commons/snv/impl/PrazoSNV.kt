@@ -0,0 +1,153 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.exception.TempoEsgotadoException
+import dnit.commons.snv.RequisicaoApiGeo
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import kotlin.coroutines.AbstractCoroutineContextElement
+import kotlin.coroutines.CoroutineContext
+import kotlinx.coroutines.TimeoutCancellationException
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeout
+
+/**
+ * Prazo total de uma chamada ao cliente, propagado no contexto da coroutine
+ * (ou repassado explicitamente nas chamadas bloqueantes, veja [cria]).
+ * A sequência de buffers, os retries e os timeouts de cada requisição consomem o mesmo orçamento,
+ * ao invés de cada tentativa ter o seu próprio timeout.
+ *
+ * @param limiteNanos Instante limite, na escala de [System.nanoTime]
+ * @param timeoutTotalMs Orçamento total informado na chamada
+ */
+internal class PrazoSNV private constructor(
+    private val limiteNanos : Long,
+    internal val timeoutTotalMs : Long,
+) : AbstractCoroutineContextElement(PrazoSNV) {
+
+    /**
+     * Indica que alguma etapa da chamada foi interrompida pelo prazo (o resultado pode ser parcial)
+     */
+    @Volatile
+    internal var atingido : Boolean = false
+        private set
+
+
+    /**
+     * Tempo restante em milissegundos (arredondado para cima), ou zero se esgotado
+     */
+    internal fun restanteMs() : Long {
+        val restante = limiteNanos - System.nanoTime()
+        if (restante <= 0) return 0
+        return (restante + 999_999) / 1_000_000
+    }
+
+    internal fun esgotado() : Boolean = limiteNanos - System.nanoTime() <= 0
+
+    internal fun esgotou(causa : Throwable? = null) : TempoEsgotadoException {
+        atingido = true
+        return TempoEsgotadoException("Tempo limite de $timeoutTotalMs ms esgotado", timeoutTotalMs, causa)
+    }
+
+
+
+    /**
+     * @throws TempoEsgotadoException se o prazo estiver esgotado
+     */
+    internal fun verifica() {
+        if (esgotado()) throw esgotou()
+    }
+
+
+
+    /**
+     * Aguarda o resultado de [futuro] bloqueando a thread atual, no máximo até o fim do prazo
+     * @throws TempoEsgotadoException se o prazo se esgotar antes do resultado
+     */
+    internal fun <T> aguarda(futuro : Future<T>) : T {
+        try {
+            return futuro.get(restanteMs(), TimeUnit.MILLISECONDS)
+        } catch (e : TimeoutException) {
+            throw esgotou(e)
+        }
+    }
+
+
+
+    /**
+     * Limita o timeout da requisição ao tempo restante
+     * @throws TempoEsgotadoException se o prazo já estiver esgotado
+     */
+    internal fun ajusta(requisicao : RequisicaoApiGeo) : RequisicaoApiGeo {
+        val restante = restanteMs()
+        if (restante <= 0) throw esgotou()
+
+        val timeout = requisicao.timeoutMs
+        if (timeout != null && timeout <= restante) return requisicao
+        return requisicao.copy(timeoutMs = restante)
+    }
+
+
+
+    internal companion object Chave : CoroutineContext.Key<PrazoSNV> {
+
+        internal suspend fun atual() : PrazoSNV? = currentCoroutineContext()[Chave]
+
+
+
+        /**
+         * Prazo de [timeoutTotalMs] a partir de agora (ou nenhum, se nulo), para as chamadas bloqueantes
+         */
+        internal fun cria(timeoutTotalMs : Long?) : PrazoSNV? {
+            if (timeoutTotalMs == null) return null
+            require(timeoutTotalMs > 0) { "Timeout total deve ser positivo" }
+
+            return PrazoSNV(System.nanoTime() + timeoutTotalMs * 1_000_000, timeoutTotalMs)
+        }
+
+
+
+        /**
+         * Executa [block] com o prazo de [timeoutTotalMs] (ou sem prazo, se nulo).
+         * Um prazo já presente no contexto e mais curto continua valendo.
+         */
+        internal suspend fun <T> comPrazo(timeoutTotalMs : Long?, block : suspend () -> T) : T {
+            val prazo = cria(timeoutTotalMs) ?: return block()
+            val externo = atual()
+            if (externo != null && externo.limiteNanos - prazo.limiteNanos <= 0) return block()
+
+            return withContext(prazo) { block() }
+        }
+
+
+
+        /**
+         * @throws TempoEsgotadoException se o prazo da chamada atual estiver esgotado
+         */
+        internal suspend fun verifica() {
+            atual()?.verifica()
+        }
+
+
+
+        /**
+         * Executa [block] cancelando-o quando o prazo da chamada atual se esgotar.
+         * Garante o prazo mesmo quando [block] aguarda outra chamada (ex.: requisição já em andamento).
+         * @throws TempoEsgotadoException se o prazo se esgotar antes ou durante a execução
+         */
+        internal suspend fun <T> limita(block : suspend () -> T) : T {
+            val prazo = atual() ?: return block()
+            val restante = prazo.restanteMs()
+            if (restante <= 0) throw prazo.esgotou()
+
+            return try {
+                withTimeout(restante) { block() }
+            } catch (e : TimeoutCancellationException) {
+                throw prazo.esgotou(e)
+            }
+        }
+
+    }
+
+}
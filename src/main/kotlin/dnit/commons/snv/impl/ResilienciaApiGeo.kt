@@ -0,0 +1,223 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.exception.CommonException
+import dnit.commons.exception.TempoEsgotadoException
+import dnit.commons.snv.EndpointApiGeo
+import dnit.commons.snv.EstadoCircuito
+import dnit.commons.snv.EstatisticasCircuito
+import kotlinx.coroutines.delay
+import kotlin.coroutines.cancellation.CancellationException
+
+/**
+ * Executa chamadas à API-Geo com retry, opcionalmente protegidas por [CircuitBreaker] e [OrcamentoRetry].
+ * Com o circuito aberto a chamada falha imediatamente, sem aguardar timeouts nem delays de retry.
+ * Sem eles, cada chamada apenas repete até o número de tentativas informado.
+ * Cada tentativa passa pelo [limitador] de taxa e concorrência; o tempo em fila não conta
+ * como falha para o circuito. Com um [PrazoSNV] no contexto (ou informado nas chamadas bloqueantes),
+ * as tentativas e os delays entre elas consomem o mesmo prazo.
+ */
+internal class ResilienciaApiGeo(
+    private val circuito : CircuitBreaker? = null,
+    private val orcamento : OrcamentoRetry? = null,
+    @Volatile internal var limitador : LimitadorApiGeo = LimitadorApiGeo(),
+) {
+
+    private class Tentativa {
+        var rejeitada : Boolean = false
+    }
+
+
+
+    /**
+     * Executa [callable] até [maxTentativas] vezes, aguardando [delayMs] entre as tentativas.
+     * @throws CommonException se o circuito estiver aberto ou todas as tentativas falharem
+     * @throws TempoEsgotadoException se o prazo da chamada se esgotar antes de uma tentativa com sucesso
+     */
+    internal suspend fun <T> executa(
+        endpoint : EndpointApiGeo,
+        maxTentativas : Int,
+        delayMs : Long,
+        callable : suspend () -> T,
+    ) : T {
+        return repete(endpoint, maxTentativas, delayMs, PrazoSNV.atual(), { delay(it) }) { tentativa ->
+            PrazoSNV.limita {
+                limitador.executa {
+                    verificaCircuito(tentativa)
+                    executaRegistrando { callable() }
+                }
+            }
+        }
+    }
+
+
+
+    /**
+     * Como [executa], com as tentativas executadas na thread atual e as esperas entre elas em [Thread.sleep].
+     * O [prazo] limita a espera no limitador e os delays; as requisições devem limitar o seu timeout a ele.
+     */
+    internal fun <T> executaBloqueante(
+        endpoint : EndpointApiGeo,
+        maxTentativas : Int,
+        delayMs : Long,
+        prazo : PrazoSNV?,
+        callable : () -> T,
+    ) : T {
+        return repete(endpoint, maxTentativas, delayMs, prazo, { Thread.sleep(it) }) { tentativa ->
+            limitador.executaBloqueante(prazo) {
+                verificaCircuito(tentativa)
+                executaRegistrando(callable)
+            }
+        }
+    }
+
+
+
+    /**
+     * Igual a [executa], mas retorna [defaultValue] ao invés de lançar exceção.
+     * O esgotamento do prazo ([TempoEsgotadoException]) continua sendo lançado.
+     */
+    internal suspend fun <T> executaOuPadrao(
+        endpoint : EndpointApiGeo,
+        maxTentativas : Int,
+        delayMs : Long,
+        defaultValue : T,
+        callable : suspend () -> T,
+    ) : T {
+        return ouPadrao(defaultValue) { executa(endpoint, maxTentativas, delayMs, callable) }
+    }
+
+
+
+    /**
+     * Igual a [executaBloqueante], mas retorna [defaultValue] ao invés de lançar exceção
+     */
+    internal fun <T> executaOuPadraoBloqueante(
+        endpoint : EndpointApiGeo,
+        maxTentativas : Int,
+        delayMs : Long,
+        prazo : PrazoSNV?,
+        defaultValue : T,
+        callable : () -> T,
+    ) : T {
+        return ouPadrao(defaultValue) { executaBloqueante(endpoint, maxTentativas, delayMs, prazo, callable) }
+    }
+
+
+
+    private inline fun <T> repete(
+        endpoint : EndpointApiGeo,
+        maxTentativas : Int,
+        delayMs : Long,
+        prazo : PrazoSNV?,
+        aguarda : (Long) -> Unit,
+        executaTentativa : (Tentativa) -> T,
+    ) : T {
+        if (maxTentativas <= 0) {
+            throw CommonException("Numero maximo de tentativas ($maxTentativas) atingido. Desistindo.")
+        }
+
+        orcamento?.registraRequisicao()
+        var tentativas = 0
+
+        while (true) {
+            val tentativa = Tentativa()
+
+            try {
+                return executaTentativa(tentativa)
+
+            } catch (e : CancellationException) {
+                throw e
+
+            } catch (e : InterruptedException) {
+                throw e
+
+            } catch (e : TempoEsgotadoException) {
+                throw e
+
+            } catch (e : Exception) {
+                tentativas++
+                if (tentativa.rejeitada || tentativas >= maxTentativas) throw e
+
+                // Não aguarda o delay se a próxima tentativa já começaria fora do prazo
+                if (prazo != null && prazo.restanteMs() <= delayMs) throw prazo.esgotou(e)
+                if (orcamento?.consomeRetry() == false) throw e
+            }
+
+            MetricasSNV.retry(endpoint)
+            aguarda(delayMs)
+        }
+    }
+
+
+
+    private inline fun <T> ouPadrao(defaultValue : T, block : () -> T) : T {
+        return try {
+            block()
+
+        } catch (e : CancellationException) {
+            throw e
+
+        } catch (e : InterruptedException) {
+            throw e
+
+        } catch (e : TempoEsgotadoException) {
+            throw e
+
+        } catch (e : Exception) {
+            defaultValue
+        }
+    }
+
+
+
+    private fun verificaCircuito(tentativa : Tentativa) {
+        if (circuito?.permite() == false) {
+            tentativa.rejeitada = true
+            throw CommonException("Circuito da API-Geo aberto. Chamada rejeitada.")
+        }
+    }
+
+
+
+    private inline fun <T> executaRegistrando(callable : () -> T) : T {
+        try {
+            val resultado = callable()
+            circuito?.registraSucesso()
+            return resultado
+
+        } catch (e : CancellationException) {
+            circuito?.registraAbandono()
+            throw e
+
+        } catch (e : InterruptedException) {
+            circuito?.registraAbandono()
+            throw e
+
+        } catch (e : TempoEsgotadoException) {
+            // O prazo é da chamada, não indica falha da API-Geo
+            circuito?.registraAbandono()
+            throw e
+
+        } catch (e : Exception) {
+            circuito?.registraFalha()
+            throw e
+        }
+    }
+
+
+
+    /**
+     * Sem circuit breaker o estado é sempre fechado; sem orçamento os retries não são limitados
+     */
+    internal fun estatisticas() : EstatisticasCircuito {
+        return EstatisticasCircuito(
+            estado = circuito?.estado() ?: EstadoCircuito.FECHADO,
+            falhasConsecutivas = circuito?.falhasConsecutivas() ?: 0,
+            aberturas = circuito?.aberturas() ?: 0,
+            rejeitadas = circuito?.rejeitadas() ?: 0,
+            retriesNegados = orcamento?.negados() ?: 0,
+            tokensRetry = orcamento?.tokens() ?: Double.POSITIVE_INFINITY,
+        )
+    }
+
+}
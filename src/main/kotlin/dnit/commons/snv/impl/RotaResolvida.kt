@@ -0,0 +1,17 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.model.internal.RotaSNV
+import dnit.commons.snv.SNVResponse
+
+/**
+ * Rota retornada pelo localizarkm com os trechos encontrados para o seu km.
+ * [proximos] é nulo quando o resultado veio de um fallback (último trecho ou trecho vazio).
+ * [degradada] indica que os trechos não puderam ser obtidos (a resposta não possui trecho).
+ */
+internal class RotaResolvida(
+    val rota : RotaSNV,
+    val indice : IndiceTrechos,
+    val proximos : IntArray?,
+    val respostas : List<SNVResponse>,
+    val degradada : Boolean = false,
+)
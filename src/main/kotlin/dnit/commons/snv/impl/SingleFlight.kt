@@ -0,0 +1,108 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.exception.TempoEsgotadoException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.future.await
+import kotlin.coroutines.cancellation.CancellationException
+
+/**
+ * Garante que apenas uma execução por chave esteja em andamento.
+ * Chamadas concorrentes com a mesma chave aguardam o mesmo resultado ao invés de repetir o trabalho.
+ * Chamadas suspensas ([executa]) e bloqueantes ([executaBloqueante]) compartilham as mesmas execuções.
+ */
+internal class SingleFlight<K : Any, V> {
+
+    private val emAndamento = ConcurrentHashMap<K, CompletableFuture<V>>()
+
+
+
+    internal suspend fun executa(key : K, block : suspend () -> V) : V {
+        while (true) {
+            val futuro = CompletableFuture<V>()
+            val existente = emAndamento.putIfAbsent(key, futuro)
+                ?: return executaComoLider(key, futuro) { block() }
+
+            try {
+                // Aguarda uma cópia: o cancelamento desta chamada não cancela a execução compartilhada
+                return existente.copy().await()
+
+            } catch (e : CancellationException) {
+                // Se quem estava executando foi cancelado, mas esta chamada não, tenta novamente
+                currentCoroutineContext().ensureActive()
+            }
+        }
+    }
+
+
+
+    /**
+     * Como [executa], bloqueando a thread atual. A espera por outra chamada é limitada por [prazo].
+     * @throws TempoEsgotadoException se o prazo se esgotar aguardando outra chamada
+     */
+    internal fun executaBloqueante(key : K, prazo : PrazoSNV?, block : () -> V) : V {
+        while (true) {
+            val futuro = CompletableFuture<V>()
+            val existente = emAndamento.putIfAbsent(key, futuro)
+                ?: return executaComoLider(key, futuro, block)
+
+            try {
+                return if (prazo != null) prazo.aguarda(existente) else existente.get()
+
+            } catch (e : ExecutionException) {
+                throw e.cause ?: e
+
+            } catch (e : CancellationException) {
+                // Quem estava executando foi cancelado; esta chamada tenta novamente
+            }
+        }
+    }
+
+
+
+    /**
+     * Quantidade de chaves com execução em andamento
+     */
+    internal fun emAndamento() : Int = emAndamento.size
+
+
+
+    /**
+     * A chave é liberada antes de o resultado ser publicado, para que quem tentar novamente
+     * não encontre a execução já encerrada
+     */
+    private inline fun executaComoLider(
+        key : K,
+        futuro : CompletableFuture<V>,
+        block : () -> V,
+    ) : V {
+        val resultado = try {
+            block()
+
+        } catch (e : Throwable) {
+            emAndamento.remove(key, futuro)
+            futuro.completeExceptionally(paraAguardando(e))
+            throw e
+        }
+
+        emAndamento.remove(key, futuro)
+        futuro.complete(resultado)
+        return resultado
+    }
+
+
+
+    /**
+     * Interrupção e prazo esgotado são de quem estava executando: as demais chamadas tentam novamente
+     */
+    private fun paraAguardando(erro : Throwable) : Throwable {
+        if (erro is InterruptedException || erro is TempoEsgotadoException) {
+            return CancellationException("Execução compartilhada abandonada").apply { initCause(erro) }
+        }
+        return erro
+    }
+
+}
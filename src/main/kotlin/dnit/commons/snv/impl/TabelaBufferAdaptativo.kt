@@ -0,0 +1,120 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.exception.CommonException
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import kotlin.math.floor
+
+/**
+ * Tabela aprendida do buffer que obteve resultado no localizarkm, por célula espacial.
+ * Pontos de uma mesma região costumam precisar do mesmo raio, então a sequência de buffers
+ * passa a começar próximo ao último buffer bem sucedido na célula da coordenada.
+ *
+ * @param tamanhoCelulaGraus Tamanho (em graus) do lado de cada célula
+ * @param maxCelulas Quantidade máxima de células mantidas (LRU)
+ * @param arquivo Arquivo opcional onde a tabela é persistida
+ */
+internal class TabelaBufferAdaptativo(
+    private val tamanhoCelulaGraus : Double = 0.05,
+    private val maxCelulas : Int = 10_000,
+    private val arquivo : Path? = null,
+) {
+
+    private val celulas = CacheLru<Long, Double>(maxCelulas)
+
+
+    init {
+        require(tamanhoCelulaGraus > 0) { "Tamanho da célula deve ser positivo" }
+        arquivo?.let { if (Files.exists(it)) carrega(it) }
+    }
+
+
+
+    /**
+     * Reordena os buffers para iniciar um passo abaixo do buffer aprendido na célula da coordenada,
+     * seguido pelo aprendido e pelos maiores. Assim a célula volta a aprender um buffer menor quando ele
+     * passa a ser suficiente (um buffer maior sempre contém as rotas de um menor).
+     * Os demais buffers menores são mantidos ao final, caso os maiores não retornem resultado.
+     */
+    internal fun ordena(lat : Double, lng : Double, buffers : List<Double>) : List<Double> {
+        val aprendido = celulas.obtem(celula(lat, lng)) ?: return buffers
+        val (maiores, menores) = buffers.partition { it >= aprendido }
+        val abaixo = menores.maxOrNull() ?: return maiores
+        return listOf(abaixo) + maiores + (menores - abaixo)
+    }
+
+
+
+    internal fun registra(lat : Double, lng : Double, buffer : Double) {
+        celulas.adiciona(celula(lat, lng), buffer)
+    }
+
+
+
+    internal fun bufferAprendido(lat : Double, lng : Double) : Double? = celulas.obtem(celula(lat, lng))
+
+
+
+    internal fun tamanho() : Int = celulas.tamanho()
+
+
+
+    /**
+     * Persiste a tabela no [arquivo] configurado (uma linha por célula)
+     */
+    internal fun salva() {
+        val destino = arquivo ?: throw CommonException("Arquivo da tabela de buffers não configurado")
+
+        val linhas = ArrayList<String>(celulas.tamanho() + 1)
+        linhas.add("$CABECALHO$tamanhoCelulaGraus")
+        celulas.entradas().forEach { (celula, buffer) -> linhas.add("$celula;$buffer") }
+
+        try {
+            destino.parent?.let { Files.createDirectories(it) }
+            val temporario = destino.resolveSibling("${destino.fileName}.tmp")
+            Files.write(temporario, linhas)
+            Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING)
+
+        } catch (e : IOException) {
+            throw CommonException("Erro ao salvar tabela de buffers em $destino", e)
+        }
+    }
+
+
+
+    private fun carrega(origem : Path) {
+        val linhas = try {
+            Files.readAllLines(origem)
+        } catch (e : IOException) {
+            throw CommonException("Erro ao ler tabela de buffers de $origem", e)
+        }
+
+        // Tabelas geradas com outro tamanho de célula não são compatíveis
+        if (linhas.firstOrNull() != "$CABECALHO$tamanhoCelulaGraus") return
+
+        linhas.drop(1).forEach { linha ->
+            val separador = linha.indexOf(';')
+            if (separador == -1) return@forEach
+            val celula = linha.substring(0, separador).toLongOrNull() ?: return@forEach
+            val buffer = linha.substring(separador + 1).toDoubleOrNull() ?: return@forEach
+            celulas.adiciona(celula, buffer)
+        }
+    }
+
+
+
+    private fun celula(lat : Double, lng : Double) : Long {
+        val linha = floor(lat / tamanhoCelulaGraus).toLong()
+        val coluna = floor(lng / tamanhoCelulaGraus).toLong()
+        return (linha shl 32) xor (coluna and 0xFFFF_FFFFL)
+    }
+
+
+
+    private companion object {
+        const val CABECALHO = "# tamanhoCelulaGraus="
+    }
+
+}
@@ -0,0 +1,107 @@
+package dnit.commons.snv.impl
+
+import java.lang.reflect.Method
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.Semaphore
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Paralelismo das chamadas bloqueantes no modo para threads virtuais
+ * (veja [dnit.commons.snv.ClientSNV.configuraThreadsVirtuais]).
+ * Cada tarefa executa em uma nova thread virtual (JDK 21+) ou, em JDKs anteriores,
+ * em uma thread de plataforma daemon. A thread chamadora apenas distribui as tarefas e aguarda.
+ */
+internal object ThreadsVirtuais {
+
+    // Executors.newVirtualThreadPerTaskExecutor() não é visível com o jvmTarget 1.8
+    private val novoExecutorVirtual : Method? = try {
+        Executors::class.java.getMethod("newVirtualThreadPerTaskExecutor")
+    } catch (e : NoSuchMethodException) {
+        null
+    }
+
+    private val contador = AtomicInteger()
+
+    private val fabricaPlataforma = ThreadFactory { tarefa ->
+        Thread(tarefa, "snv-bloqueante-${contador.incrementAndGet()}").apply { isDaemon = true }
+    }
+
+
+
+    /**
+     * Executa [tarefa] para cada item, cada uma em sua própria thread, com no máximo [paralelismo]
+     * ao mesmo tempo. Com um único item ou paralelismo 1, executa na própria thread chamadora.
+     * @return Resultados na ordem dos itens
+     */
+    internal fun <T, R> executaTodos(itens : List<T>, paralelismo : Int, tarefa : (T) -> R) : List<R> {
+        if (paralelismo == 1 || itens.size <= 1) return itens.map(tarefa)
+
+        val vagas = Semaphore(paralelismo)
+        val executor = novoExecutor()
+
+        try {
+            val futuros = itens.map { item ->
+                vagas.acquire()
+                executor.submit(Callable {
+                    try {
+                        tarefa(item)
+                    } finally {
+                        vagas.release()
+                    }
+                })
+            }
+            return futuros.map { aguarda(it) }
+
+        } finally {
+            // Em caso de falha ou interrupção, interrompe as tarefas ainda em andamento
+            executor.shutdownNow()
+        }
+    }
+
+
+
+    /**
+     * Executa [tarefa] para todos os itens ao mesmo tempo e aguarda os resultados na ordem dos itens,
+     * até o primeiro aceito por [aceita]. As tarefas dos itens seguintes ainda em andamento são interrompidas.
+     * @return Item e resultado aceitos, ou null se nenhum resultado foi aceito
+     */
+    internal fun <T, R> primeiroAceito(itens : List<T>, tarefa : (T) -> R, aceita : (T, R) -> Boolean) : Pair<T, R>? {
+        val executor = novoExecutor()
+
+        try {
+            val futuros = itens.map { item -> executor.submit(Callable { tarefa(item) }) }
+
+            for ((i, futuro) in futuros.withIndex()) {
+                val resultado = aguarda(futuro)
+                if (aceita(itens[i], resultado)) return Pair(itens[i], resultado)
+            }
+            return null
+
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+
+
+    private fun novoExecutor() : ExecutorService {
+        return novoExecutorVirtual?.invoke(null) as ExecutorService?
+            ?: Executors.newCachedThreadPool(fabricaPlataforma)
+    }
+
+
+
+    private fun <R> aguarda(futuro : Future<R>) : R {
+        try {
+            return futuro.get()
+        } catch (e : ExecutionException) {
+            throw e.cause ?: e
+        }
+    }
+
+}
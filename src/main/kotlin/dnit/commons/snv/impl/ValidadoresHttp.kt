@@ -0,0 +1,51 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.model.internal.MiniTrechoSNV
+import dnit.commons.snv.RespostaApiGeo
+
+/**
+ * Validadores de cache HTTP (ETag e Last-Modified) de uma resposta da API-Geo,
+ * utilizados para revalidar entradas com requisições condicionais.
+ */
+internal data class ValidadoresHttp(
+    val etag : String?,
+    val lastModified : String?,
+) {
+
+    /**
+     * Cabeçalhos da requisição condicional (If-None-Match e If-Modified-Since)
+     */
+    internal fun cabecalhosCondicionais() : Map<String, String> {
+        val cabecalhos = mutableMapOf<String, String>()
+        etag?.let { cabecalhos["If-None-Match"] = it }
+        lastModified?.let { cabecalhos["If-Modified-Since"] = it }
+        return cabecalhos
+    }
+
+
+
+    internal companion object {
+
+        /**
+         * Validadores presentes na resposta, ou null se ela não possuir nenhum
+         */
+        internal fun de(resposta : RespostaApiGeo) : ValidadoresHttp? {
+            val etag = resposta.cabecalho("ETag")
+            val lastModified = resposta.cabecalho("Last-Modified")
+            if (etag == null && lastModified == null) return null
+            return ValidadoresHttp(etag, lastModified)
+        }
+
+    }
+
+}
+
+
+
+/**
+ * Resultado da busca de trechos. [trechos] nulo indica que o conteúdo não foi modificado (304).
+ */
+internal class RespostaTrechos(
+    val trechos : List<MiniTrechoSNV>?,
+    val validadores : ValidadoresHttp?,
+)
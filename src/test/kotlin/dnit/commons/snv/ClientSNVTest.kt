@@ -0,0 +1,745 @@
+package dnit.commons.snv
+
+import dnit.commons.exception.CommonException
+import dnit.commons.exception.TempoEsgotadoException
+import java.net.SocketTimeoutException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Duration
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+import jdk.jfr.Recording
+import jdk.jfr.consumer.RecordingFile
+import kotlin.test.assertEquals
+import kotlin.test.assertIs
+import kotlin.test.assertTrue
+import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import org.junit.jupiter.api.condition.EnabledForJreRange
+import org.junit.jupiter.api.condition.JRE
+import org.junit.jupiter.api.io.TempDir
+
+class ClientSNVTest {
+
+    @TempDir
+    lateinit var diretorio : Path
+
+    private val requisicoes = Collections.synchronizedList(mutableListOf<RequisicaoApiGeo>())
+
+
+    private inner class TransporteContador(private val delegado : TransporteApiGeo) : TransporteApiGeo {
+        override fun executaBloqueante(requisicao : RequisicaoApiGeo) : RespostaApiGeo {
+            requisicoes.add(requisicao)
+            return delegado.executaBloqueante(requisicao)
+        }
+    }
+
+    private fun fixture(caminho : String, conteudo : String) {
+        val arquivo = diretorio.resolve(caminho)
+        Files.createDirectories(arquivo.parent)
+        Files.writeString(arquivo, conteudo)
+    }
+
+    private fun requisicoes(endpoint : EndpointApiGeo) = requisicoes.count { it.endpoint == endpoint }
+
+    // Thread.ofVirtual() não é visível com o jvmTarget 1.8, por isso é acessado por reflexão
+    private fun iniciaThreadVirtual(tarefa : Runnable) : Thread {
+        val builder = Thread::class.java.getMethod("ofVirtual").invoke(null)
+        return Class.forName("java.lang.Thread\$Builder").getMethod("start", Runnable::class.java).invoke(builder, tarefa) as Thread
+    }
+
+
+    @BeforeEach
+    fun configura() {
+        ClientSNV.configuraTransporte(TransporteContador(TransporteLocalApiGeo(diretorio)))
+        ClientSNV.configuraCacheTrechos()
+        ClientSNV.configuraCacheVersoes(false)
+        ClientSNV.configuraCircuitBreaker(false)
+
+        fixture("rotas/-16.6_-49.2.json", """[{"id":"1","br":"060","uf":"GO","km":12.0,"versao":"202401A","sg_tp_trecho":"B"}]""")
+        fixture("trechos/GO_060_B.json", """{"trechos":[
+            {"trecho":"060BGO0010","extensao":10.0,"coincidencia":null},
+            {"trecho":"060BGO0030","extensao":5.0,"coincidencia":"153BGO0410"}
+        ]}""")
+        fixture("trechos/DF_020_B.json", """{"trechos":[{"trecho":"020BDF0010","extensao":3.0}]}""")
+    }
+
+    @AfterEach
+    fun restaura() {
+        ClientSNV.configuraTimeouts()
+        ClientSNV.configuraCacheTrechos()
+        ClientSNV.configuraCacheVersoes(false)
+        ClientSNV.configuraCircuitBreaker(false)
+        ClientSNV.configuraThreadsVirtuais(false)
+        ClientSNV.configuraCacheRespostas(false)
+        ClientSNV.configuraBufferAdaptativo(false)
+    }
+
+
+    @Test
+    fun `should resolve snv from transport fixtures`() {
+        // When
+        val snvs = ClientSNV.obtemSNVsBlocking(-16.6, -49.2, dataReferencia = "2024-01-01", retryDelay = 0L)
+
+        // Then
+        assertEquals(listOf("060BGO0030"), snvs.map { it.snv })
+        assertEquals("153BGO0410", snvs.single().coincidencia)
+        assertEquals("202401A", snvs.single().versao)
+    }
+
+    @Test
+    fun `should warm trecho cache for every uf and br combination`() {
+        // Given
+        val progresso = Collections.synchronizedList(mutableListOf<Pair<Int, Int>>())
+
+        // When
+        val carregados = ClientSNV.preaquecerCacheBlocking(
+            listOf("GO", "DF"),
+            listOf("060", "020"),
+            "2024-01-01",
+            progresso = { concluidos, total -> progresso.add(concluidos to total) },
+        )
+        ClientSNV.obtemSNVsBlocking(-16.6, -49.2, dataReferencia = "2024-01-01", retryDelay = 0L)
+
+        // Then
+        assertEquals(2, carregados)
+        assertEquals((1..4).map { it to 4 }, progresso.sortedBy { it.first })
+        assertEquals(4, requisicoes(EndpointApiGeo.TRECHOS))
+        assertEquals(4, ClientSNV.estatisticasCacheTrechos().tamanho)
+    }
+
+    @Test
+    fun `should warm trechos under the br format returned by the api`() {
+        // When
+        ClientSNV.preaquecerCacheBlocking(listOf("go"), listOf("60", "BR-060"), "2024-01-01")
+        ClientSNV.obtemSNVsBlocking(-16.6, -49.2, dataReferencia = "2024-01-01", retryDelay = 0L)
+
+        // Then
+        assertEquals(1, requisicoes(EndpointApiGeo.TRECHOS))
+        assertEquals("060", requisicoes.single { it.endpoint == EndpointApiGeo.TRECHOS }.parametros["br"])
+    }
+
+    @Test
+    fun `should resolve junction rotas concurrently keeping sorted output`() {
+        // Given
+        fixture("rotas/-15.8_-47.9.json", """[
+            {"id":"1","br":"060","uf":"GO","km":3.0,"versao":"202401A","sg_tp_trecho":"B"},
+            {"id":"2","br":"020","uf":"DF","km":1.0,"versao":"202401A","sg_tp_trecho":"B"}
+        ]""")
+        val ambasEmAndamento = CountDownLatch(2)
+        val simultaneas = AtomicBoolean(true)
+        val local = TransporteLocalApiGeo(diretorio)
+        ClientSNV.configuraTransporte(object : TransporteApiGeo {
+            override fun executaBloqueante(requisicao : RequisicaoApiGeo) : RespostaApiGeo {
+                if (requisicao.endpoint == EndpointApiGeo.TRECHOS) {
+                    ambasEmAndamento.countDown()
+                    if (!ambasEmAndamento.await(5, TimeUnit.SECONDS)) simultaneas.set(false)
+                }
+                return local.executaBloqueante(requisicao)
+            }
+        })
+
+        // When
+        val snvs = ClientSNV.obtemSNVsBlocking(-15.8, -47.9, dataReferencia = "2024-01-01", uf = "DF", retryDelay = 0L)
+
+        // Then
+        assertTrue(simultaneas.get())
+        assertEquals(listOf("020BDF0010", "060BGO0010"), snvs.map { it.snv })
+    }
+
+    @Test
+    fun `should reuse anchor result along a track inside the same trecho`() {
+        // Given
+        fixture("rotas/-16.61_-49.2.json", """[{"br":"060","uf":"GO","km":5.0,"versao":"202401A","sg_tp_trecho":"B"}]""")
+        fixture("rotas/-16.6105_-49.2.json", """[{"br":"060","uf":"GO","km":5.05,"versao":"202401A","sg_tp_trecho":"B"}]""")
+        fixture("rotas/-16.65_-49.2.json", """[{"br":"060","uf":"GO","km":12.0,"versao":"202401A","sg_tp_trecho":"B"}]""")
+        val trajeto = listOf(
+            Coordenada(-16.61, -49.2),
+            Coordenada(-16.6105, -49.2), // ~55 m: define a direção do trajeto e o sentido do km
+            Coordenada(-16.611, -49.2),  // ~55 m da âncora
+            Coordenada(-16.6115, -49.2), // ~111 m da âncora
+            Coordenada(-16.65, -49.2),   // ~4,3 km da âncora
+        )
+
+        // When
+        val resultado = ClientSNV.obtemSNVsTrajetoBlocking(trajeto, "2024-01-01", retryDelay = 0L)
+
+        // Then
+        assertEquals(
+            listOf(listOf("060BGO0010"), listOf("060BGO0010"), listOf("060BGO0010"), listOf("060BGO0010"), listOf("060BGO0030")),
+            resultado.map { item -> item.snvs.map { it.snv } },
+        )
+        assertEquals(-16.611, resultado[2].snvs.single().latitude)
+        assertEquals(5.105, resultado[2].snvs.single().km!!, 0.002)
+        assertEquals(5.161, resultado[3].snvs.single().km!!, 0.002)
+        assertEquals(3, requisicoes(EndpointApiGeo.ROTAS))
+    }
+
+    @Test
+    fun `should estimate decreasing km when the track runs against the km direction`() {
+        // Given
+        fixture("rotas/-16.61_-49.2.json", """[{"br":"060","uf":"GO","km":5.0,"versao":"202401A","sg_tp_trecho":"B"}]""")
+        fixture("rotas/-16.6105_-49.2.json", """[{"br":"060","uf":"GO","km":4.95,"versao":"202401A","sg_tp_trecho":"B"}]""")
+        val trajeto = listOf(Coordenada(-16.61, -49.2), Coordenada(-16.6105, -49.2), Coordenada(-16.611, -49.2))
+
+        // When
+        val resultado = ClientSNV.obtemSNVsTrajetoBlocking(trajeto, "2024-01-01", retryDelay = 0L)
+
+        // Then
+        assertEquals(4.895, resultado[2].snvs.single().km!!, 0.002)
+        assertEquals(2, requisicoes(EndpointApiGeo.ROTAS))
+    }
+
+    @Test
+    fun `should query again near a trecho boundary`() {
+        // Given
+        fixture("rotas/-16.61_-49.2.json", """[{"br":"060","uf":"GO","km":9.8,"versao":"202401A","sg_tp_trecho":"B"}]""")
+        fixture("rotas/-16.6105_-49.2.json", """[{"br":"060","uf":"GO","km":9.85,"versao":"202401A","sg_tp_trecho":"B"}]""")
+        val trajeto = listOf(Coordenada(-16.61, -49.2), Coordenada(-16.6105, -49.2))
+
+        // When
+        ClientSNV.obtemSNVsTrajetoBlocking(trajeto, "2024-01-01", retryDelay = 0L)
+
+        // Then
+        assertEquals(2, requisicoes(EndpointApiGeo.ROTAS))
+    }
+
+    private fun configuraTransporteComAtraso(maximoSimultaneas : AtomicInteger) {
+        val emAndamento = AtomicInteger()
+        val local = TransporteLocalApiGeo(diretorio)
+
+        ClientSNV.configuraTransporte(object : TransporteApiGeo {
+            override fun executaBloqueante(requisicao : RequisicaoApiGeo) : RespostaApiGeo {
+                if (requisicao.endpoint != EndpointApiGeo.ROTAS) return local.executaBloqueante(requisicao)
+
+                maximoSimultaneas.accumulateAndGet(emAndamento.incrementAndGet(), ::maxOf)
+                try {
+                    // O primeiro ponto é o mais lento
+                    if (requisicao.parametros["lat"] == "-16.6") Thread.sleep(300)
+                    return local.executaBloqueante(requisicao)
+                } finally {
+                    emAndamento.decrementAndGet()
+                }
+            }
+        })
+    }
+
+    @Test
+    fun `should send a single localizarkm request for concurrent identical lookups`() {
+        // Given
+        val local = TransporteLocalApiGeo(diretorio)
+        val emAndamento = CountDownLatch(1)
+        val libera = CountDownLatch(1)
+        ClientSNV.configuraTransporte(object : TransporteApiGeo {
+            override fun executaBloqueante(requisicao : RequisicaoApiGeo) : RespostaApiGeo {
+                requisicoes.add(requisicao)
+                if (requisicao.endpoint == EndpointApiGeo.ROTAS) {
+                    emAndamento.countDown()
+                    libera.await(5, TimeUnit.SECONDS)
+                }
+                return local.executaBloqueante(requisicao)
+            }
+        })
+
+        // When
+        val consultas = List(4) { ClientSNV.obtemSNVsAsync(-16.6, -49.2, dataReferencia = "2024-01-01", retryDelay = 0L) }
+        emAndamento.await(5, TimeUnit.SECONDS)
+        Thread.sleep(200) // As demais consultas passam a aguardar a requisição em andamento
+        libera.countDown()
+        val resultados = consultas.map { it.get(10, TimeUnit.SECONDS) }
+
+        // Then
+        assertTrue(resultados.all { snvs -> snvs.map { it.snv } == listOf("060BGO0030") })
+        assertEquals(1, requisicoes(EndpointApiGeo.ROTAS))
+        assertEquals(1, requisicoes(EndpointApiGeo.TRECHOS))
+    }
+
+    private fun buffersConsultados() = requisicoes.filter { it.endpoint == EndpointApiGeo.ROTAS }.map { it.parametros["r"] }
+
+    @Test
+    fun `should learn a smaller buffer again after a cell learned a large one`() {
+        // Given
+        val buffers = listOf(150.0, 600.0, 1_050.0, 1_500.0)
+        ClientSNV.configuraBufferAdaptativo()
+        // Mesma célula: o primeiro ponto só tem rotas a partir de 1050 m, o segundo em qualquer buffer
+        fixture("rotas/-16.61_-49.21_1050.0.json", """[{"br":"060","uf":"GO","km":5.0,"versao":"202401A","sg_tp_trecho":"B"}]""")
+        fixture("rotas/-16.61_-49.21_1500.0.json", """[{"br":"060","uf":"GO","km":5.0,"versao":"202401A","sg_tp_trecho":"B"}]""")
+        fixture("rotas/-16.62_-49.21.json", """[{"br":"060","uf":"GO","km":9.7,"versao":"202401A","sg_tp_trecho":"B"}]""")
+
+        // When
+        ClientSNV.obtemSNVsBlocking(-16.61, -49.21, dataReferencia = "2024-01-01", retryDelay = 0L, bufferList = buffers)
+        requisicoes.clear()
+        val snvs = ClientSNV.obtemSNVsBlocking(-16.62, -49.21, dataReferencia = "2024-01-01", retryDelay = 0L, bufferList = buffers)
+        val aposRefinar = buffersConsultados()
+        requisicoes.clear()
+        ClientSNV.obtemSNVsBlocking(-16.62, -49.21, dataReferencia = "2024-01-01", retryDelay = 0L, bufferList = buffers)
+
+        // Then
+        assertEquals(listOf("600.0", "150.0"), aposRefinar) // Um passo abaixo do aprendido, depois desce até o menor
+        assertEquals(listOf("150.0"), buffersConsultados())
+        // Os trechos são os do menor buffer (150 m): com 600 m o km 9.7 também alcançaria o trecho seguinte
+        assertEquals(listOf("060BGO0010"), snvs.map { it.snv })
+    }
+
+    private val buffersSonda = listOf(150.0, 600.0, 1_050.0, 1_500.0)
+
+    /**
+     * Sem rotas em 150 m; 600 m encontra o trecho 060BGO0010 (lento) e os buffers maiores o 060BGO0030
+     */
+    private fun configuraSondagem(lentos : (String?) -> Boolean) {
+        fixture("rotas/-16.63_-49.21_600.0.json", """[{"br":"060","uf":"GO","km":5.0,"versao":"202401A","sg_tp_trecho":"B"}]""")
+        fixture("rotas/-16.63_-49.21_1050.0.json", """[{"br":"060","uf":"GO","km":12.0,"versao":"202401A","sg_tp_trecho":"B"}]""")
+        fixture("rotas/-16.63_-49.21_1500.0.json", """[{"br":"060","uf":"GO","km":12.0,"versao":"202401A","sg_tp_trecho":"B"}]""")
+        fixture("rotas/-16.64_-49.21.json", """[{"br":"060","uf":"GO","km":5.0,"versao":"202401A","sg_tp_trecho":"B"}]""")
+        val local = TransporteLocalApiGeo(diretorio)
+
+        ClientSNV.configuraTransporte(object : TransporteApiGeo {
+            override fun executaBloqueante(requisicao : RequisicaoApiGeo) : RespostaApiGeo {
+                requisicoes.add(requisicao)
+                if (requisicao.endpoint == EndpointApiGeo.ROTAS && lentos(requisicao.parametros["r"])) Thread.sleep(300)
+                return local.executaBloqueante(requisicao)
+            }
+        })
+    }
+
+    @Test
+    fun `should pick the smallest buffer with rotas even when a larger probe answers first`() {
+        // Given
+        configuraSondagem { it == "600.0" }
+
+        // When
+        val snvs = ClientSNV.obtemSNVsBlocking(-16.63, -49.21, dataReferencia = "2024-01-01", retryDelay = 0L,
+                                               bufferList = buffersSonda, buffersParalelos = 4)
+
+        // Then
+        assertEquals(listOf("060BGO0010"), snvs.map { it.snv })
+        assertEquals(4, requisicoes(EndpointApiGeo.ROTAS))
+    }
+
+    @Test
+    fun `should cancel larger probes once a smaller buffer answers`() {
+        // Given
+        configuraSondagem { it != "150.0" }
+        val metricas = MetricasSNVEmMemoria()
+        ClientSNV.registraMetricas(metricas)
+
+        // When
+        val snvs = try {
+            ClientSNV.obtemSNVsBlocking(-16.64, -49.21, dataReferencia = "2024-01-01", retryDelay = 0L,
+                                        bufferList = buffersSonda, buffersParalelos = 4)
+        } finally {
+            ClientSNV.removeMetricas(metricas)
+        }
+
+        // Then
+        assertEquals(listOf("060BGO0010"), snvs.map { it.snv })
+        assertEquals(mapOf(200 to 1L), metricas.statusPorCodigo(EndpointApiGeo.ROTAS)) // Sondas canceladas não contam
+        assertEquals(mapOf(150.0 to 1L), metricas.buffersConsultados())
+    }
+
+    @Test
+    fun `should probe buffers one at a time by default`() {
+        // Given
+        configuraSondagem { false }
+
+        // When
+        val snvs = ClientSNV.obtemSNVsBlocking(-16.63, -49.21, dataReferencia = "2024-01-01", retryDelay = 0L,
+                                               bufferList = buffersSonda)
+
+        // Then
+        assertEquals(listOf("060BGO0010"), snvs.map { it.snv })
+        assertEquals(listOf("150.0", "600.0"), buffersConsultados())
+    }
+
+    @Test
+    fun `should not cache degraded responses when trechos cannot be fetched`() {
+        // Given
+        val local = TransporteLocalApiGeo(diretorio)
+        val trechosDisponiveis = AtomicBoolean(false)
+        ClientSNV.configuraCacheRespostas()
+        ClientSNV.configuraTransporte(object : TransporteApiGeo {
+            override fun executaBloqueante(requisicao : RequisicaoApiGeo) : RespostaApiGeo {
+                requisicoes.add(requisicao)
+                if (requisicao.endpoint == EndpointApiGeo.TRECHOS && !trechosDisponiveis.get()) {
+                    throw IllegalStateException("indisponível")
+                }
+                return local.executaBloqueante(requisicao)
+            }
+        })
+
+        // When
+        val degradado = ClientSNV.obtemSNVsBlocking(-16.6, -49.2, dataReferencia = "2024-01-01", retryCount = 2, retryDelay = 0L)
+        trechosDisponiveis.set(true)
+        val completo = ClientSNV.obtemSNVsBlocking(-16.6, -49.2, dataReferencia = "2024-01-01", retryCount = 2, retryDelay = 0L)
+        val doCache = ClientSNV.obtemSNVsBlocking(-16.6, -49.2, dataReferencia = "2024-01-01", retryCount = 2, retryDelay = 0L)
+
+        // Then
+        assertEquals(listOf(null), degradado.map { it.snv })
+        assertEquals(listOf("060BGO0030"), completo.map { it.snv })
+        assertEquals(listOf("060BGO0030"), doCache.map { it.snv })
+        assertEquals(2, requisicoes(EndpointApiGeo.ROTAS)) // A resposta degradada não foi servida do cache
+    }
+
+    @Test
+    fun `should keep batch results in input order with bounded concurrency`() {
+        // Given
+        fixture("rotas/-16.61_-49.2.json", """[{"br":"060","uf":"GO","km":5.0,"versao":"202401A","sg_tp_trecho":"B"}]""")
+        val maximoSimultaneas = AtomicInteger()
+        configuraTransporteComAtraso(maximoSimultaneas)
+
+        // When
+        val resultados = ClientSNV.obtemSNVsEmLoteBlocking(pontosFluxo, "2024-01-01", retryCount = 1, paralelismo = 2)
+
+        // Then
+        assertEquals(pontosFluxo, resultados.map { it.coordenada })
+        assertEquals(listOf("060BGO0030"), resultados[0].snvs.map { it.snv }) // O primeiro ponto termina por último
+        assertEquals(listOf("060BGO0010"), resultados[1].snvs.map { it.snv })
+        assertTrue(resultados.all { it.sucesso })
+        assertEquals(2, maximoSimultaneas.get())
+    }
+
+    @Test
+    fun `should isolate a failed coordinate from the rest of the batch`() {
+        // Given
+        fixture("rotas/-16.61_-49.2.json", """[{"br":"060","uf":"GO","km":5.0,"versao":"202401A","sg_tp_trecho":"B"}]""")
+        val local = TransporteLocalApiGeo(diretorio)
+        ClientSNV.configuraTransporte(object : TransporteApiGeo {
+            override fun executaBloqueante(requisicao : RequisicaoApiGeo) : RespostaApiGeo {
+                // Apenas o primeiro ponto não responde dentro do prazo do lote
+                if (requisicao.parametros["lat"] == "-16.6") Thread.sleep(1_000)
+                return local.executaBloqueante(requisicao)
+            }
+        })
+
+        // When
+        val resultados = ClientSNV.obtemSNVsEmLoteBlocking(
+            pontosFluxo.take(2), "2024-01-01", retryCount = 1, paralelismo = 2, timeoutTotalMs = 500L,
+        )
+
+        // Then
+        assertEquals(pontosFluxo.take(2), resultados.map { it.coordenada })
+        assertIs<TempoEsgotadoException>(resultados[0].erro)
+        assertTrue(resultados[0].snvs.isEmpty())
+        assertTrue(resultados[1].sucesso)
+        assertEquals(listOf("060BGO0010"), resultados[1].snvs.map { it.snv })
+    }
+
+    private val pontosFluxo = listOf(
+        Coordenada(-16.6, -49.2),
+        Coordenada(-16.61, -49.2),
+        Coordenada(-16.62, -49.2),
+        Coordenada(-16.63, -49.2),
+    )
+
+    @Test
+    fun `should stream results in input order with bounded concurrency`() = runBlocking {
+        // Given
+        fixture("rotas/-16.61_-49.2.json", """[{"br":"060","uf":"GO","km":5.0,"versao":"202401A","sg_tp_trecho":"B"}]""")
+        val maximoSimultaneas = AtomicInteger()
+        configuraTransporteComAtraso(maximoSimultaneas)
+
+        // When
+        val resultados = ClientSNV.obtemSNVsFlow(pontosFluxo.asFlow(), "2024-01-01", retryCount = 1, concorrencia = 2)
+            .toList()
+
+        // Then
+        assertEquals(pontosFluxo, resultados.map { it.coordenada })
+        assertEquals(listOf("060BGO0030"), resultados[0].snvs.map { it.snv })
+        assertEquals(listOf("060BGO0010"), resultados[1].snvs.map { it.snv })
+        assertTrue(resultados.all { it.sucesso })
+        assertTrue(maximoSimultaneas.get() <= 2)
+    }
+
+    @Test
+    fun `should stream results as soon as ready when unordered`() = runBlocking {
+        // Given
+        val maximoSimultaneas = AtomicInteger()
+        configuraTransporteComAtraso(maximoSimultaneas)
+
+        // When
+        val resultados = ClientSNV.obtemSNVsFlow(pontosFluxo.asFlow(), "2024-01-01", retryCount = 1, concorrencia = 2, ordenado = false)
+            .toList()
+
+        // Then
+        assertEquals(pontosFluxo.toSet(), resultados.map { it.coordenada }.toSet())
+        assertEquals(pontosFluxo.first(), resultados.last().coordenada)
+        assertTrue(maximoSimultaneas.get() <= 2)
+    }
+
+    @Test
+    fun `should compose async lookups without blocking the caller`() {
+        // Given
+        fixture("rotas/-16.621117_-49.207783.json", """[{"br":"153","uf":"GO","km":1.0,"versao":"202401A"}]""")
+
+        // When
+        val combinado = ClientSNV.obtemSNVsAsync(-16.6, -49.2, dataReferencia = "2024-01-01", retryDelay = 0L)
+            .thenCombine(ClientSNV.obtemVersaoSnvAsync("2024-01-01")) { snvs, versao -> snvs.map { it.snv } to versao }
+            .get(10, TimeUnit.SECONDS)
+
+        // Then
+        assertEquals(listOf("060BGO0030") to "202401A", combinado)
+    }
+
+    @Test
+    fun `should query snv version on every call unless the timeline is enabled`() {
+        // Given
+        fixture("rotas/-16.621117_-49.207783.json", """[{"br":"153","uf":"GO","km":1.0,"versao":"202401A"}]""")
+
+        // When
+        repeat(2) { ClientSNV.obtemVersaoSnvBlocking("2024-01-01") }
+        val semLinhaTempo = requisicoes(EndpointApiGeo.ROTAS)
+        ClientSNV.configuraCacheVersoes()
+        repeat(2) { ClientSNV.obtemVersaoSnvBlocking("2024-01-01") }
+
+        // Then
+        assertEquals(2, semLinhaTempo)
+        assertEquals(3, requisicoes(EndpointApiGeo.ROTAS))
+    }
+
+    @Test
+    fun `should complete async lookup exceptionally on invalid date`() {
+        // When
+        val future = ClientSNV.obtemSNVsAsync(-16.6, -49.2, dataReferencia = "01/01/2024")
+
+        // Then
+        val erro = assertThrows<ExecutionException> { future.get(10, TimeUnit.SECONDS) }
+        assertIs<CommonException>(erro.cause)
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    fun `should run blocking lookup on the calling virtual thread without pinning`() {
+        // Given
+        val threads = Collections.synchronizedSet(mutableSetOf<Thread>())
+        val falhou = AtomicBoolean(false)
+        val local = TransporteLocalApiGeo(diretorio)
+        ClientSNV.configuraTransporte(object : TransporteApiGeo {
+            override fun executaBloqueante(requisicao : RequisicaoApiGeo) : RespostaApiGeo {
+                threads.add(Thread.currentThread())
+                Thread.sleep(20)
+                if (requisicao.endpoint == EndpointApiGeo.ROTAS && falhou.compareAndSet(false, true)) {
+                    throw IllegalStateException("falha temporária")
+                }
+                return local.executaBloqueante(requisicao)
+            }
+        })
+        ClientSNV.configuraThreadsVirtuais()
+        val snvs = AtomicReference<List<SNVResponse>>()
+        val arquivo = diretorio.resolve("threads-virtuais.jfr")
+
+        // When
+        val chamadora = Recording().use { gravacao ->
+            gravacao.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO)
+            gravacao.start()
+            val thread = iniciaThreadVirtual {
+                snvs.set(ClientSNV.obtemSNVsBlocking(-16.6, -49.2, dataReferencia = "2024-01-01", retryDelay = 50L))
+            }
+            thread.join(10_000)
+            gravacao.stop()
+            gravacao.dump(arquivo)
+            thread
+        }
+
+        // Then
+        assertEquals(listOf("060BGO0030"), snvs.get().map { it.snv })
+        assertTrue(falhou.get())
+        assertEquals(setOf(chamadora), threads.toSet())
+        assertEquals(emptyList(), RecordingFile.readAllEvents(arquivo).map { it.stackTrace })
+    }
+
+    @Test
+    fun `should run blocking lookup and retry backoff on the calling thread without coroutines in virtual thread mode`() {
+        // Given
+        val threads = Collections.synchronizedSet(mutableSetOf<Thread>())
+        val pilhas = Collections.synchronizedList(mutableListOf<List<String>>())
+        val falhou = AtomicBoolean(false)
+        val local = TransporteLocalApiGeo(diretorio)
+        ClientSNV.configuraTransporte(object : TransporteApiGeo {
+            override fun executaBloqueante(requisicao : RequisicaoApiGeo) : RespostaApiGeo {
+                threads.add(Thread.currentThread())
+                pilhas.add(Thread.currentThread().stackTrace.map { it.className })
+                if (requisicao.endpoint == EndpointApiGeo.ROTAS && falhou.compareAndSet(false, true)) {
+                    throw IllegalStateException("falha temporária")
+                }
+                return local.executaBloqueante(requisicao)
+            }
+        })
+        ClientSNV.configuraThreadsVirtuais()
+
+        // When
+        val inicio = System.nanoTime()
+        val snvs = ClientSNV.obtemSNVsBlocking(-16.6, -49.2, dataReferencia = "2024-01-01", retryDelay = 100L)
+        val decorridoMs = (System.nanoTime() - inicio) / 1_000_000
+
+        // Then
+        assertEquals(listOf("060BGO0030"), snvs.map { it.snv })
+        assertTrue(falhou.get())
+        assertTrue(decorridoMs >= 100L)
+        assertEquals(setOf(Thread.currentThread()), threads.toSet())
+        assertEquals(emptyList(), pilhas.flatten().filter { it.startsWith("kotlinx.coroutines") })
+    }
+
+    @Test
+    fun `should bound blocking requests by the call deadline in virtual thread mode`() {
+        // Given
+        val timeouts = Collections.synchronizedList(mutableListOf<Long?>())
+        ClientSNV.configuraTransporte(object : TransporteApiGeo {
+            override fun executaBloqueante(requisicao : RequisicaoApiGeo) : RespostaApiGeo {
+                // Simula o timeout de leitura do socket: a resposta nunca chega
+                timeouts.add(requisicao.timeoutMs)
+                Thread.sleep(requisicao.timeoutMs ?: 10_000L)
+                throw SocketTimeoutException("Read timed out")
+            }
+        })
+        ClientSNV.configuraThreadsVirtuais()
+
+        // When
+        val inicio = System.nanoTime()
+        val erro = assertThrows<TempoEsgotadoException> {
+            ClientSNV.obtemSNVsBlocking(-16.6, -49.2, dataReferencia = "2024-01-01", retryDelay = 0L, timeoutTotalMs = 300L)
+        }
+        val decorridoMs = (System.nanoTime() - inicio) / 1_000_000
+
+        // Then
+        assertEquals(300L, erro.timeoutMs)
+        assertTrue(decorridoMs < 2_000L)
+        assertTrue(timeouts.isNotEmpty() && timeouts.all { it != null && it <= 300L })
+    }
+
+    @Test
+    fun `should probe buffer windows on separate threads and interrupt larger probes in virtual thread mode`() {
+        // Given
+        configuraSondagem { false }
+        val threads = Collections.synchronizedSet(mutableSetOf<Thread>())
+        val interrompidas = AtomicInteger()
+        val local = TransporteLocalApiGeo(diretorio)
+        ClientSNV.configuraTransporte(object : TransporteApiGeo {
+            override fun executaBloqueante(requisicao : RequisicaoApiGeo) : RespostaApiGeo {
+                if (requisicao.endpoint == EndpointApiGeo.ROTAS) {
+                    threads.add(Thread.currentThread())
+                    if (requisicao.parametros["r"] in setOf("1050.0", "1500.0")) {
+                        try {
+                            Thread.sleep(10_000)
+                        } catch (e : InterruptedException) {
+                            interrompidas.incrementAndGet()
+                            throw e
+                        }
+                    }
+                }
+                return local.executaBloqueante(requisicao)
+            }
+        })
+        ClientSNV.configuraThreadsVirtuais()
+
+        // When
+        val inicio = System.nanoTime()
+        val snvs = ClientSNV.obtemSNVsBlocking(-16.63, -49.21, dataReferencia = "2024-01-01", retryDelay = 0L,
+                                               bufferList = buffersSonda, buffersParalelos = 4)
+        val decorridoMs = (System.nanoTime() - inicio) / 1_000_000
+        val limite = System.nanoTime() + 5_000_000_000
+        while (interrompidas.get() < 2 && System.nanoTime() < limite) Thread.sleep(10)
+
+        // Then
+        assertEquals(listOf("060BGO0010"), snvs.map { it.snv })
+        assertTrue(decorridoMs < 5_000L)
+        assertEquals(2, interrompidas.get())
+        assertTrue(threads.size >= 3) // As sondagens lentas ocupam threads próprias até serem interrompidas
+        assertTrue(Thread.currentThread() !in threads)
+    }
+
+    @Test
+    fun `should query batch coordinates on separate threads bounded by paralelismo in virtual thread mode`() {
+        // Given
+        val maximoSimultaneas = AtomicInteger()
+        configuraTransporteComAtraso(maximoSimultaneas)
+        ClientSNV.configuraThreadsVirtuais()
+
+        // When
+        val resultados = ClientSNV.obtemSNVsEmLoteBlocking(pontosFluxo, "2024-01-01", retryCount = 1, paralelismo = 2)
+
+        // Then
+        assertEquals(pontosFluxo, resultados.map { it.coordenada })
+        assertTrue(resultados.all { it.sucesso })
+        assertEquals(2, maximoSimultaneas.get())
+    }
+
+    @Test
+    fun `should warm trechos on separate threads in virtual thread mode`() {
+        // Given
+        val threads = Collections.synchronizedSet(mutableSetOf<Thread>())
+        val local = TransporteLocalApiGeo(diretorio)
+        ClientSNV.configuraTransporte(object : TransporteApiGeo {
+            override fun executaBloqueante(requisicao : RequisicaoApiGeo) : RespostaApiGeo {
+                threads.add(Thread.currentThread())
+                return local.executaBloqueante(requisicao)
+            }
+        })
+        ClientSNV.configuraThreadsVirtuais()
+
+        // When
+        val carregados = ClientSNV.preaquecerCacheBlocking(listOf("GO", "DF"), listOf("060", "020"), "2024-01-01")
+
+        // Then
+        assertEquals(2, carregados)
+        assertEquals(4, ClientSNV.estatisticasCacheTrechos().tamanho)
+        assertTrue(threads.isNotEmpty() && Thread.currentThread() !in threads)
+    }
+
+    @Test
+    fun `should throw typed timeout when no rota is found within the call deadline`() {
+        // Given
+        ClientSNV.configuraTransporte(object : TransporteApiGeo {
+            override fun executaBloqueante(requisicao : RequisicaoApiGeo) : RespostaApiGeo {
+                requisicoes.add(requisicao)
+                throw IllegalStateException("indisponível")
+            }
+        })
+
+        // When
+        val erro = assertThrows<TempoEsgotadoException> {
+            ClientSNV.obtemSNVsBlocking(-16.6, -49.2, dataReferencia = "2024-01-01", retryDelay = 10_000L, timeoutTotalMs = 300L)
+        }
+
+        // Then
+        assertEquals(300L, erro.timeoutMs)
+        assertEquals(1, requisicoes(EndpointApiGeo.ROTAS)) // Nem o delay do retry nem os buffers seguintes cabem no prazo
+        assertTrue(requisicoes.all { it.timeoutMs != null && it.timeoutMs!! <= 300L })
+    }
+
+    @Test
+    fun `should return partial result without caching it when trechos miss the deadline`() {
+        // Given
+        val local = TransporteLocalApiGeo(diretorio)
+        val trechosDisponiveis = AtomicBoolean(false)
+        ClientSNV.configuraCacheRespostas()
+        ClientSNV.configuraTransporte(object : TransporteApiGeo {
+            override fun executaBloqueante(requisicao : RequisicaoApiGeo) : RespostaApiGeo {
+                if (requisicao.endpoint == EndpointApiGeo.TRECHOS && !trechosDisponiveis.get()) {
+                    throw IllegalStateException("indisponível")
+                }
+                return local.executaBloqueante(requisicao)
+            }
+        })
+
+        // When
+        val parcial = ClientSNV.obtemSNVsBlocking(-16.6, -49.2, dataReferencia = "2024-01-01", retryDelay = 10_000L, timeoutTotalMs = 1_000L)
+        trechosDisponiveis.set(true)
+        val completo = ClientSNV.obtemSNVsBlocking(-16.6, -49.2, dataReferencia = "2024-01-01", retryDelay = 0L)
+
+        // Then
+        assertEquals(listOf(null), parcial.map { it.snv })
+        assertEquals("060", parcial.single().br)
+        assertEquals(listOf("060BGO0030"), completo.map { it.snv })
+    }
+
+}
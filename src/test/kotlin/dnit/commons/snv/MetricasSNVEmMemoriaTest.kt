@@ -0,0 +1,58 @@
+package dnit.commons.snv
+
+import kotlin.test.assertEquals
+import org.junit.jupiter.api.Test
+
+class MetricasSNVEmMemoriaTest {
+
+    @Test
+    fun `should build latency histogram per endpoint`() {
+        // Given
+        val metricas = MetricasSNVEmMemoria()
+
+        // When
+        metricas.onRequisicao(EndpointApiGeo.ROTAS, 3_000_000, 200)
+        metricas.onRequisicao(EndpointApiGeo.ROTAS, 40_000_000, 200)
+        metricas.onRequisicao(EndpointApiGeo.ROTAS, 90_000_000_000, -1)
+        metricas.onRequisicao(EndpointApiGeo.TRECHOS, 700_000_000, 404)
+
+        // Then
+        val histograma = metricas.histograma(EndpointApiGeo.ROTAS)
+        assertEquals(3, histograma.total)
+        assertEquals(1, histograma.contagens[0])
+        assertEquals(1, histograma.contagens[3])
+        assertEquals(1, histograma.contagens.last())
+        assertEquals(5.0, histograma.percentilMs(30.0))
+        assertEquals(50.0, histograma.percentilMs(50.0))
+        assertEquals(Double.POSITIVE_INFINITY, histograma.percentilMs(99.0))
+        assertEquals(mapOf(-1 to 1L, 200 to 2L), metricas.statusPorCodigo(EndpointApiGeo.ROTAS))
+        assertEquals(mapOf(404 to 1L), metricas.statusPorCodigo(EndpointApiGeo.TRECHOS))
+        assertEquals(1_000.0, metricas.histograma(EndpointApiGeo.TRECHOS).percentilMs(100.0))
+    }
+
+    @Test
+    fun `should count buffers retries and cache events`() {
+        // Given
+        val metricas = MetricasSNVEmMemoria()
+
+        // When
+        metricas.onBuffer(150.0, false)
+        metricas.onBuffer(600.0, true)
+        metricas.onBuffer(150.0, true)
+        metricas.onRetry(EndpointApiGeo.TRECHOS)
+        metricas.onCache(TipoCache.TRECHOS, EventoCache.HIT)
+        metricas.onCache(TipoCache.TRECHOS, EventoCache.HIT)
+        metricas.onCache(TipoCache.RESPOSTAS, EventoCache.MISS)
+
+        // Then
+        assertEquals(mapOf(150.0 to 2L, 600.0 to 1L), metricas.buffersConsultados())
+        assertEquals(mapOf(150.0 to 1L, 600.0 to 1L), metricas.buffersVencedores())
+        assertEquals(1, metricas.escalonamentosBuffer())
+        assertEquals(1, metricas.retries(EndpointApiGeo.TRECHOS))
+        assertEquals(0, metricas.retries(EndpointApiGeo.ROTAS))
+        assertEquals(2, metricas.eventosCache(TipoCache.TRECHOS, EventoCache.HIT))
+        assertEquals(1, metricas.eventosCache(TipoCache.RESPOSTAS, EventoCache.MISS))
+        assertEquals(0, metricas.eventosCache(TipoCache.RESPOSTAS, EventoCache.EVICTION))
+    }
+
+}
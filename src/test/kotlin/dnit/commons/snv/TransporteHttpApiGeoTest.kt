@@ -0,0 +1,163 @@
+package dnit.commons.snv
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import java.io.ByteArrayOutputStream
+import java.net.InetSocketAddress
+import java.net.http.HttpTimeoutException
+import java.util.Collections
+import java.util.concurrent.ExecutionException
+import java.util.zip.GZIPOutputStream
+import kotlin.test.assertEquals
+import kotlin.test.assertIs
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+
+class TransporteHttpApiGeoTest {
+
+    private lateinit var servidor : HttpServer
+
+    private val portasCliente = Collections.synchronizedList(mutableListOf<Int>())
+
+    private val baseUrl : String
+        get() = "http://localhost:${servidor.address.port}"
+
+    private val requisicao = RequisicaoApiGeo(EndpointApiGeo.TRECHOS, mapOf("uf" to "GO", "br" to "060"))
+
+
+    private fun responde(exchange : HttpExchange, status : Int, corpo : String = "") {
+        val bytes = corpo.toByteArray()
+        exchange.sendResponseHeaders(status, if (bytes.isEmpty()) -1 else bytes.size.toLong())
+        exchange.responseBody.use { it.write(bytes) }
+    }
+
+    @BeforeEach
+    fun inicia() {
+        servidor = HttpServer.create(InetSocketAddress("localhost", 0), 0)
+        servidor.createContext("/snv/trechos") { exchange ->
+            portasCliente.add(exchange.remoteAddress.port)
+            responde(exchange, 200, """{"trechos":[]}""")
+        }
+        servidor.createContext("/antigo/snv/trechos") { exchange ->
+            exchange.responseHeaders.add("Location", "/snv/trechos?${exchange.requestURI.rawQuery}")
+            responde(exchange, 302)
+        }
+        servidor.createContext("/lento/snv/trechos") { exchange ->
+            Thread.sleep(1_000)
+            responde(exchange, 200, "{}")
+        }
+        servidor.createContext("/gzip/snv/trechos") { exchange ->
+            val corpo = ByteArrayOutputStream().also { saida -> GZIPOutputStream(saida).use { it.write("{\"trechos\":[]}".toByteArray()) } }
+            exchange.responseHeaders.add("Content-Encoding", "gzip")
+            exchange.sendResponseHeaders(200, corpo.size().toLong())
+            exchange.responseBody.use { it.write(corpo.toByteArray()) }
+        }
+        servidor.createContext("/condicional/snv/trechos") { exchange ->
+            exchange.responseHeaders.add("Content-Encoding", "gzip")
+            exchange.responseHeaders.add("ETag", "\"v1\"")
+            responde(exchange, 304)
+        }
+        servidor.createContext("/interrompido/snv/trechos") { exchange ->
+            // Envia os cabeçalhos e parte do corpo, e para de responder
+            exchange.sendResponseHeaders(200, 100)
+            exchange.responseBody.write("{\"trechos\":[".toByteArray())
+            exchange.responseBody.flush()
+            Thread.sleep(2_000)
+            exchange.close()
+        }
+        servidor.start()
+    }
+
+    @AfterEach
+    fun encerra() {
+        servidor.stop(0)
+    }
+
+
+    @Test
+    fun `should reuse the shared client connection across calls`() {
+        // Given
+        val transporte = TransporteHttpApiGeo(baseUrl, compressao = false)
+
+        // When
+        repeat(3) { transporte.executaBloqueante(requisicao).use { it.corpo.readBytes() } }
+        repeat(2) { transporte.executaAsync(requisicao).get().use { it.corpo.readBytes() } }
+
+        // Then
+        assertEquals(5, portasCliente.size)
+        assertEquals(1, portasCliente.toSet().size)
+    }
+
+    @Test
+    fun `should follow redirects`() {
+        // Given
+        val transporte = TransporteHttpApiGeo("$baseUrl/antigo", compressao = false)
+
+        // When
+        val resposta = transporte.executaBloqueante(requisicao)
+
+        // Then
+        assertEquals(200, resposta.status)
+        assertEquals("""{"trechos":[]}""", resposta.corpo.use { String(it.readBytes()) })
+    }
+
+    @Test
+    fun `should apply read timeout from constructor or request`() {
+        // Given
+        val transporte = TransporteHttpApiGeo("$baseUrl/lento", readTimeoutMs = 200L, compressao = false)
+        val semTimeout = TransporteHttpApiGeo("$baseUrl/lento", compressao = false)
+
+        // When / Then
+        assertThrows<HttpTimeoutException> { transporte.executaBloqueante(requisicao) }
+        assertThrows<HttpTimeoutException> { semTimeout.executaBloqueante(requisicao.copy(timeoutMs = 200L)) }
+    }
+
+    @Test
+    fun `should decompress gzip responses`() {
+        // Given
+        val transporte = TransporteHttpApiGeo("$baseUrl/gzip")
+
+        // When
+        val resposta = transporte.executaBloqueante(requisicao)
+
+        // Then
+        assertEquals(200, resposta.status)
+        assertNull(resposta.cabecalho("Content-Encoding"))
+        assertEquals("{\"trechos\":[]}", resposta.corpo.use { String(it.readBytes()) })
+    }
+
+    @Test
+    fun `should keep a not modified response with content encoding and no body`() {
+        // Given
+        val transporte = TransporteHttpApiGeo("$baseUrl/condicional")
+
+        // When
+        val resposta = transporte.executaBloqueante(requisicao.copy(cabecalhos = mapOf("If-None-Match" to "\"v1\"")))
+
+        // Then
+        assertEquals(304, resposta.status)
+        assertEquals("\"v1\"", resposta.cabecalho("ETag"))
+        assertEquals(0, resposta.corpo.use { it.readBytes().size })
+    }
+
+    @Test
+    fun `should time out when the server stalls in the middle of the body`() {
+        // Given
+        val transporte = TransporteHttpApiGeo("$baseUrl/interrompido", readTimeoutMs = 300L, compressao = false)
+
+        // When
+        val inicio = System.nanoTime()
+        assertThrows<HttpTimeoutException> { transporte.executaBloqueante(requisicao) }
+        val erro = assertThrows<ExecutionException> { transporte.executaAsync(requisicao).get() }
+        val decorridoMs = (System.nanoTime() - inicio) / 1_000_000
+
+        // Then
+        assertIs<HttpTimeoutException>(erro.cause)
+        assertTrue(decorridoMs < 1_500L)
+    }
+
+}
@@ -0,0 +1,120 @@
+package dnit.commons.snv
+
+import java.net.HttpURLConnection
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.TimeUnit
+import kotlin.test.assertEquals
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+class TransporteLocalApiGeoTest {
+
+    @TempDir
+    lateinit var diretorio : Path
+
+
+    private fun trechos(data : String = "2024-01-01") = RequisicaoApiGeo(
+        EndpointApiGeo.TRECHOS,
+        mapOf("uf" to "go", "br" to "060", "tipo" to "B", "data" to data),
+    )
+
+    private fun fixture(caminho : String, conteudo : String) {
+        val arquivo = diretorio.resolve(caminho)
+        Files.createDirectories(arquivo.parent)
+        Files.writeString(arquivo, conteudo)
+    }
+
+
+    @Test
+    fun `should serve most specific fixture`() {
+        // Given
+        fixture("trechos/GO_060_B.json", "geral")
+        fixture("trechos/GO_060_B_2024-01-01.json", "especifico")
+        val transporte = TransporteLocalApiGeo(diretorio)
+
+        // When
+        val especifico = transporte.executaBloqueante(trechos()).use { String(it.corpo.readBytes()) }
+        val geral = transporte.executaBloqueante(trechos("2023-05-10")).use { String(it.corpo.readBytes()) }
+
+        // Then
+        assertEquals("especifico", especifico)
+        assertEquals("geral", geral)
+    }
+
+    @Test
+    fun `should serve async requests through the blocking implementation by default`() {
+        // Given
+        fixture("trechos/GO_060_B.json", "geral")
+        val transporte = TransporteLocalApiGeo(diretorio)
+
+        // When
+        val corpo = transporte.executaAsync(trechos()).get(10, TimeUnit.SECONDS).use { String(it.corpo.readBytes()) }
+
+        // Then
+        assertEquals("geral", corpo)
+    }
+
+    @Test
+    fun `should fallback rotas fixture to any buffer`() {
+        // Given
+        fixture("rotas/-16.6_-49.2.json", "[]")
+        val transporte = TransporteLocalApiGeo(diretorio)
+        val requisicao = RequisicaoApiGeo(
+            EndpointApiGeo.ROTAS,
+            mapOf("lng" to "-49.2", "lat" to "-16.6", "r" to "150.0", "data" to "2024-01-01"),
+        )
+
+        // When
+        val resposta = transporte.executaBloqueante(requisicao)
+
+        // Then
+        assertEquals(HttpURLConnection.HTTP_OK, resposta.status)
+        assertEquals("application/json", resposta.cabecalho("content-type"))
+    }
+
+    @Test
+    fun `should answer not found without fixture`() {
+        // Given
+        val transporte = TransporteLocalApiGeo(diretorio)
+
+        // When
+        val resposta = transporte.executaBloqueante(trechos())
+
+        // Then
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, resposta.status)
+    }
+
+    @Test
+    fun `should record responses readable by local transport`() {
+        // Given
+        fixture("origem/trechos/GO_060_B.json", """{"trechos":[]}""")
+        val gravacao = TransporteGravacaoApiGeo(TransporteLocalApiGeo(diretorio.resolve("origem")), diretorio.resolve("gravado"))
+
+        // When
+        val gravado = gravacao.executaBloqueante(trechos()).use { String(it.corpo.readBytes()) }
+        val reproduzido = TransporteLocalApiGeo(diretorio.resolve("gravado"))
+            .executaBloqueante(trechos())
+            .use { String(it.corpo.readBytes()) }
+
+        // Then
+        assertEquals("""{"trechos":[]}""", gravado)
+        assertEquals(gravado, reproduzido)
+        assertEquals(true, Files.exists(diretorio.resolve("gravado/trechos/GO_060_B_2024-01-01.json")))
+    }
+
+    @Test
+    fun `should answer not modified for unchanged fixture`() {
+        // Given
+        fixture("trechos/GO_060_B.json", """{"trechos":[]}""")
+        val transporte = TransporteLocalApiGeo(diretorio)
+        val lastModified = transporte.executaBloqueante(trechos()).use { it.cabecalho("Last-Modified") }!!
+
+        // When
+        val resposta = transporte.executaBloqueante(trechos().copy(cabecalhos = mapOf("If-Modified-Since" to lastModified)))
+
+        // Then
+        assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, resposta.status)
+    }
+
+}
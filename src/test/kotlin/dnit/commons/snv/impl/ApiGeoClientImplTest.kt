@@ -0,0 +1,103 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.exception.CommonException
+import dnit.commons.snv.RequisicaoApiGeo
+import dnit.commons.snv.RespostaApiGeo
+import dnit.commons.snv.TransporteApiGeo
+import java.io.ByteArrayInputStream
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+
+class ApiGeoClientImplTest {
+
+    private class TransporteFixo(
+        private val status : Int,
+        private val corpo : String,
+        private val cabecalhos : Map<String, String> = emptyMap(),
+    ) : TransporteApiGeo {
+        val requisicoes = mutableListOf<RequisicaoApiGeo>()
+
+        override fun executaBloqueante(requisicao : RequisicaoApiGeo) : RespostaApiGeo {
+            requisicoes.add(requisicao)
+            return RespostaApiGeo(status, cabecalhos, ByteArrayInputStream(corpo.toByteArray()))
+        }
+    }
+
+
+    @Test
+    fun `should parse trechos served by transport`() = runBlocking {
+        // Given
+        val transporte = TransporteFixo(
+            200,
+            """{"trechos":[{"trecho":"060BGO0010","extensao":12.5}]}""",
+            mapOf("ETag" to "\"v1\""),
+        )
+        val client = ApiGeoClientImpl(transporte)
+
+        // When
+        val resposta = client.fetchTrecho("GO", "060", "B", "2024-01-01")
+
+        // Then
+        assertEquals(listOf("060BGO0010"), resposta.trechos?.map { it.trecho })
+        assertEquals(ValidadoresHttp("\"v1\"", null), resposta.validadores)
+        assertEquals(mapOf("uf" to "GO", "br" to "060", "tipo" to "B", "data" to "2024-01-01"), transporte.requisicoes.single().parametros)
+    }
+
+    @Test
+    fun `should send conditional request and accept not modified`() = runBlocking {
+        // Given
+        val transporte = TransporteFixo(304, "")
+        val client = ApiGeoClientImpl(transporte)
+        val validadores = ValidadoresHttp("\"v1\"", "Mon, 01 Jan 2024 00:00:00 GMT")
+
+        // When
+        val resposta = client.fetchTrecho("GO", "060", "B", "2024-01-01", validadores)
+
+        // Then
+        assertNull(resposta.trechos)
+        assertEquals(validadores, resposta.validadores)
+        assertEquals(
+            mapOf("If-None-Match" to "\"v1\"", "If-Modified-Since" to "Mon, 01 Jan 2024 00:00:00 GMT"),
+            transporte.requisicoes.single().cabecalhos,
+        )
+    }
+
+    @Test
+    fun `should reject not modified without validators`() {
+        // Given
+        val client = ApiGeoClientImpl(TransporteFixo(304, ""))
+
+        // Then
+        assertThrows<CommonException> {
+            runBlocking { client.fetchTrecho("GO", "060", "B", "2024-01-01") }
+        }
+    }
+
+    @Test
+    fun `should return empty list on not found`() = runBlocking {
+        // Given
+        val client = ApiGeoClientImpl(TransporteFixo(404, ""))
+
+        // When
+        val rotas = client.fetchRota(-16.6, -49.2, 150.0, "2024-01-01")
+
+        // Then
+        assertTrue(rotas.isEmpty())
+    }
+
+    @Test
+    fun `should fail on unexpected status`() {
+        // Given
+        val client = ApiGeoClientImpl(TransporteFixo(500, "erro"))
+
+        // Then
+        assertThrows<CommonException> {
+            runBlocking { client.fetchRota(-16.6, -49.2, 150.0, "2024-01-01") }
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.exception.CommonException
+import java.io.StringReader
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+import org.junit.jupiter.api.Nested
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+
+class ApiGeoJsonParserTest {
+
+    @Nested
+    inner class ParseTrechosTest {
+
+        @Test
+        fun `should parse trechos ignoring other fields`() {
+            // Given
+            val json = """
+                {
+                  "uf": "GO", "br": "060", "meta": { "total": 2, "tags": ["a", "b"] },
+                  "trechos": [
+                    { "trecho": "060BGO0010", "extensao": 12.5, "coincidencia": null },
+                    { "trecho": "060BGO0030", "extensao": "7.25", "coincidencia": "153BGO0470" }
+                  ]
+                }
+            """.trimIndent()
+
+            // When
+            val trechos = ApiGeoJsonParser.parseTrechos(StringReader(json))
+
+            // Then
+            assertEquals(2, trechos.size)
+            assertEquals("060BGO0010", trechos[0].trecho)
+            assertEquals(12.5, trechos[0].extensao)
+            assertNull(trechos[0].coincidencia)
+            assertEquals(7.25, trechos[1].extensao)
+            assertEquals("153BGO0470", trechos[1].coincidencia)
+        }
+
+        @Test
+        fun `should keep values containing commas and escapes`() {
+            // Given
+            val json = """{"trechos":[{"obs":"a, b, {c}","trecho":"040\"B\"GO","extensao":1e1,"coincidencia":"x,y"}]}"""
+
+            // When
+            val trechos = ApiGeoJsonParser.parseTrechos(StringReader(json))
+
+            // Then
+            assertEquals(1, trechos.size)
+            assertEquals("040\"B\"GO", trechos[0].trecho)
+            assertEquals(10.0, trechos[0].extensao)
+            assertEquals("x,y", trechos[0].coincidencia)
+        }
+
+        @Test
+        fun `should skip trechos without required fields`() {
+            // Given
+            val json = """{"trechos":[{"trecho":"A"},{"extensao":1.0},{"trecho":"B","extensao":"abc"},{"trecho":"C","extensao":2}]}"""
+
+            // When
+            val trechos = ApiGeoJsonParser.parseTrechos(StringReader(json))
+
+            // Then
+            assertEquals(listOf("C"), trechos.map { it.trecho })
+        }
+
+        @Test
+        fun `should keep trechos with null code so later km stay in place`() {
+            // Given
+            val json = """{"trechos":[{"trecho":"A","extensao":1.0},{"trecho":null,"extensao":2.5},{"trecho":"C","extensao":2}]}"""
+
+            // When
+            val trechos = ApiGeoJsonParser.parseTrechos(StringReader(json))
+            val indice = IndiceTrechos.de(trechos)
+
+            // Then
+            assertEquals(listOf("A", "null", "C"), trechos.map { it.trecho })
+            assertEquals(2.5, trechos[1].extensao)
+            assertEquals(3.5, indice.inicio(2))
+        }
+
+        @Test
+        fun `should return empty list when there are no trechos`() {
+            assertTrue(ApiGeoJsonParser.parseTrechos(StringReader("{}")).isEmpty())
+            assertTrue(ApiGeoJsonParser.parseTrechos(StringReader("""{"trechos":[]}""")).isEmpty())
+            assertTrue(ApiGeoJsonParser.parseTrechos(StringReader("[]")).isEmpty())
+        }
+
+        @Test
+        fun `should parse payloads larger than the internal buffer`() {
+            // Given
+            val json = (0 until 5_000).joinToString(",", prefix = """{"trechos":[""", postfix = "]}") {
+                """{"trecho":"T$it","extensao":0.5,"coincidencia":null}"""
+            }
+
+            // When
+            val trechos = ApiGeoJsonParser.parseTrechos(json.byteInputStream())
+
+            // Then
+            assertEquals(5_000, trechos.size)
+            assertEquals("T4999", trechos.last().trecho)
+        }
+    }
+
+    @Nested
+    inner class ParseRotasTest {
+
+        @Test
+        fun `should parse array of rotas`() {
+            // Given
+            val json = """
+                [
+                  {"id": 1, "idTrecho": "abc", "br": "060", "uf": "GO", "km": 10.5,
+                   "lat": -16.62, "lng": -49.20, "versao": "202401A", "sg_tp_trecho": "B",
+                   "geom": {"type": "Point", "coordinates": [-49.2, -16.6]}},
+                  {"br": "153", "uf": "GO", "km": "3"}
+                ]
+            """.trimIndent()
+
+            // When
+            val rotas = ApiGeoJsonParser.parseRotas(StringReader(json))
+
+            // Then
+            assertEquals(2, rotas.size)
+            assertEquals("1", rotas[0].id)
+            assertEquals(10.5, rotas[0].km)
+            assertEquals("-16.62", rotas[0].lat)
+            assertEquals("202401A", rotas[0].versao)
+            assertEquals(3.0, rotas[1].km)
+            assertEquals("B", rotas[1].sgTpTrecho)
+            assertNull(rotas[1].versao)
+        }
+
+        @Test
+        fun `should parse single rota object and apply defaults`() {
+            // When
+            val rotas = ApiGeoJsonParser.parseRotas(StringReader("""{"versao":null}"""))
+
+            // Then
+            assertEquals(1, rotas.size)
+            assertEquals("", rotas[0].br)
+            assertEquals("", rotas[0].uf)
+            assertEquals(-1.0, rotas[0].km)
+            assertNull(rotas[0].versao)
+        }
+
+        @Test
+        fun `should return empty list for empty responses`() {
+            assertTrue(ApiGeoJsonParser.parseRotas(StringReader("[]")).isEmpty())
+            assertTrue(ApiGeoJsonParser.parseRotas(StringReader("")).isEmpty())
+        }
+
+        @Test
+        fun `should throw on malformed json`() {
+            assertThrows<CommonException> { ApiGeoJsonParser.parseRotas(StringReader("""[{"br" "060"}]""")) }
+            assertThrows<CommonException> { ApiGeoJsonParser.parseRotas(StringReader("""[{"br":"060"""")) }
+        }
+
+        @Test
+        fun `should throw on truncated or misspelled literals`() {
+            assertThrows<CommonException> { ApiGeoJsonParser.parseRotas(StringReader("""[{"br":nul,"uf":"GO"}]""")) }
+            assertThrows<CommonException> { ApiGeoJsonParser.parseRotas(StringReader("""[{"br":"060","ativo":tx}]""")) }
+            assertThrows<CommonException> { ApiGeoJsonParser.parseRotas(StringReader("""[{"br":"060","ativo":falsy}]""")) }
+            assertThrows<CommonException> { ApiGeoJsonParser.parseTrechos(StringReader("""{"trechos":[{"trecho":"060BGO0010","extensao":1.0,"coincidencia":nulll}]}""")) }
+        }
+
+        @Test
+        fun `should accept complete literals`() {
+            // When
+            val rotas = ApiGeoJsonParser.parseRotas(StringReader("""[{"br":"060","uf":null,"ativo":true,"extra":[false,null]}]"""))
+
+            // Then
+            assertEquals("060", rotas.single().br)
+            assertEquals("", rotas.single().uf)
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.exception.CommonException
+import dnit.commons.model.internal.MiniTrechoSNV
+import java.io.DataOutputStream
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import org.junit.jupiter.api.io.TempDir
+
+class CacheDiscoTrechosTest {
+
+    @TempDir
+    lateinit var diretorio : Path
+
+    private val trechos = listOf(
+        MiniTrechoSNV(trecho = "060BGO0010", extensao = 10.25, coincidencia = null),
+        MiniTrechoSNV(trecho = "060BGO0030", extensao = 5.5, coincidencia = "153BGO0410"),
+    )
+
+
+    @Test
+    fun `should read back written trechos`() {
+        // Given
+        val cache = CacheDiscoTrechos(diretorio.resolve("cache"))
+
+        // When
+        cache.grava("go", "060", "B", "202401A", trechos)
+
+        // Then
+        assertEquals(trechos, cache.le("GO", "060", "B", "202401A"))
+        assertNull(cache.le("GO", "060", "B", "202404A"))
+    }
+
+    @Test
+    fun `should ignore corrupted files`() {
+        // Given
+        val cache = CacheDiscoTrechos(diretorio)
+        cache.grava("GO", "060", "B", "202401A", trechos)
+        val arquivo = Files.list(diretorio).use { it.findFirst().get() }
+        Files.write(arquivo, Files.readAllBytes(arquivo).copyOf(20))
+
+        // Then
+        assertNull(cache.le("GO", "060", "B", "202401A"))
+    }
+
+    @Test
+    fun `should warm new instance from snapshot`() {
+        // Given
+        val origem = CacheDiscoTrechos(diretorio.resolve("origem"))
+        origem.grava("GO", "060", "B", "202401A", trechos)
+        origem.grava("DF", "020", "B", "202401A", trechos.take(1))
+        val snapshot = diretorio.resolve("snapshot.bin")
+
+        // When
+        val exportados = origem.exportaSnapshot(snapshot)
+        val destino = CacheDiscoTrechos(diretorio.resolve("destino"))
+        val importados = destino.importaSnapshot(snapshot)
+
+        // Then
+        assertEquals(2, exportados)
+        assertEquals(2, importados)
+        assertEquals(trechos, destino.le("GO", "060", "B", "202401A"))
+        assertEquals(trechos.take(1), destino.le("DF", "020", "B", "202401A"))
+    }
+
+    @Test
+    fun `should reject invalid snapshot`() {
+        // Given
+        val snapshot = diretorio.resolve("invalido.bin")
+        Files.writeString(snapshot, "nao e um snapshot")
+
+        // Then
+        assertThrows<CommonException> { CacheDiscoTrechos(diretorio.resolve("cache")).importaSnapshot(snapshot) }
+    }
+
+    private fun snapshot(quantidade : Int, tamanhoEntrada : Int) : Path {
+        val snapshot = diretorio.resolve("corrompido.bin")
+        DataOutputStream(Files.newOutputStream(snapshot)).use { out ->
+            out.writeInt(0x534E5653)
+            out.writeShort(1)
+            out.writeInt(quantidade)
+            out.writeUTF("GO_060_B_202401A.snvt")
+            out.writeInt(tamanhoEntrada)
+            out.write(ByteArray(64))
+        }
+        return snapshot
+    }
+
+    @Test
+    fun `should reject snapshot with invalid sizes before allocating`() {
+        // Given
+        val cache = CacheDiscoTrechos(diretorio.resolve("cache"))
+
+        // Then
+        assertThrows<CommonException> { cache.importaSnapshot(snapshot(1, -1)) }
+        assertThrows<CommonException> { cache.importaSnapshot(snapshot(1, Int.MAX_VALUE)) }
+        assertThrows<CommonException> { cache.importaSnapshot(snapshot(-1, 10)) }
+        assertThrows<CommonException> { cache.importaSnapshot(snapshot(Int.MAX_VALUE, 10)) }
+    }
+
+    @Test
+    fun `should ignore files with an impossible trecho count`() {
+        // Given
+        val cache = CacheDiscoTrechos(diretorio)
+        cache.grava("GO", "060", "B", "202401A", trechos)
+        val arquivo = Files.list(diretorio).use { it.findFirst().get() }
+        val conteudo = Files.readAllBytes(arquivo)
+        ByteBuffer.wrap(conteudo).putInt(6, Int.MAX_VALUE)
+        Files.write(arquivo, conteudo)
+
+        // Then
+        assertNull(cache.le("GO", "060", "B", "202401A"))
+    }
+
+}
@@ -0,0 +1,217 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.snv.EventoCache
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.test.runTest
+import kotlinx.coroutines.yield
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+
+class CacheLruTest {
+
+    private var agora = 0L
+    private val relogio : () -> Long = { agora }
+
+
+    @Test
+    fun `should evict least recently used entry`() {
+        // Given
+        val cache = CacheLru<String, String>(maxItems = 2, relogio = relogio)
+        cache.adiciona("a", "A")
+        cache.adiciona("b", "B")
+        cache.obtem("a") // "a" passa a ser o mais recente
+
+        // When
+        cache.adiciona("c", "C")
+
+        // Then
+        assertEquals("A", cache.obtem("a"))
+        assertNull(cache.obtem("b"))
+        assertEquals("C", cache.obtem("c"))
+        assertEquals(1, cache.estatisticas().evictions)
+        assertEquals(2, cache.estatisticas().tamanho)
+    }
+
+    @Test
+    fun `should expire entries after ttl`() {
+        // Given
+        val cache = CacheLru<String, String>(maxItems = 10, ttlMs = 100, relogio = relogio)
+        cache.adiciona("a", "A")
+
+        // When
+        agora += 99_000_000
+        val antes = cache.obtem("a")
+        agora += 1_000_000
+        val depois = cache.obtem("a")
+
+        // Then
+        assertEquals("A", antes)
+        assertNull(depois)
+        assertEquals(0, cache.estatisticas().tamanho)
+    }
+
+    @Test
+    fun `should count hits and misses`() = runTest {
+        // Given
+        val cache = CacheLru<String, String>(maxItems = 10, relogio = relogio)
+
+        // When
+        cache.obtemOuCarrega("a") { "A" }
+        cache.obtemOuCarrega("a") { "outro" }
+        cache.obtemOuCarrega("a") { "outro" }
+
+        // Then
+        val estatisticas = cache.estatisticas()
+        assertEquals(2, estatisticas.hits)
+        assertEquals(1, estatisticas.misses)
+        assertEquals(2.0 / 3, estatisticas.taxaAcerto)
+    }
+
+    @Test
+    fun `should share a single load between concurrent callers`() = runTest {
+        // Given
+        val cache = CacheLru<String, String>(maxItems = 10, relogio = relogio)
+        val liberaCarga = CompletableDeferred<Unit>()
+        var cargas = 0
+
+        // When
+        val resultados = List(5) {
+            async {
+                cache.obtemOuCarrega("a") {
+                    cargas++
+                    liberaCarga.await()
+                    "A"
+                }
+            }
+        }
+        yield()
+        liberaCarga.complete(Unit)
+
+        // Then
+        assertEquals(List(5) { "A" }, resultados.awaitAll())
+        assertEquals(1, cargas)
+    }
+
+    @Test
+    fun `should not cache failed loads`() = runTest {
+        // Given
+        val cache = CacheLru<String, String>(maxItems = 10, relogio = relogio)
+
+        // When
+        assertThrows<IllegalStateException> {
+            cache.obtemOuCarrega("a") { error("falha") }
+        }
+        val resultado = cache.obtemOuCarrega("a") { "A" }
+
+        // Then
+        assertEquals("A", resultado)
+    }
+
+    @Test
+    fun `should hand expired entry to loader for revalidation`() = runTest {
+        // Given
+        val cache = CacheLru<String, String>(maxItems = 10, ttlMs = 1_000, relogio = relogio, mantemExpiradas = true)
+        cache.adiciona("a", "A")
+        agora += 1_000_000_000
+
+        // When
+        var anterior : String? = null
+        val resultado = cache.obtemOuRevalida("a") { anterior = it; it + "'" }
+
+        // Then
+        assertEquals("A", anterior)
+        assertEquals("A'", resultado)
+        assertEquals("A'", cache.obtem("a"))
+    }
+
+    @Test
+    fun `should drop expired entries by default`() = runTest {
+        // Given
+        val cache = CacheLru<String, String>(maxItems = 10, ttlMs = 1_000, relogio = relogio)
+        cache.adiciona("a", "A")
+        agora += 1_000_000_000
+
+        // When
+        var anterior : String? = "nao chamado"
+        cache.obtemOuRevalida("a") { anterior = it; "B" }
+
+        // Then
+        assertNull(anterior)
+    }
+
+    @Test
+    fun `should serve stale value and revalidate once in background`() = runTest {
+        // Given
+        val eventos = mutableListOf<EventoCache>()
+        val cache = CacheLru<String, String>(
+            maxItems = 10,
+            ttlMs = 1_000,
+            relogio = relogio,
+            maxObsoletoMs = 1_000,
+            escopoRevalidacao = this,
+        ) { eventos.add(it) }
+        cache.adiciona("a", "A")
+        agora += 1_500_000_000
+        val libera = CompletableDeferred<Unit>()
+        var cargas = 0
+
+        // When
+        val primeiro = cache.obtemOuRevalida("a") { cargas++; libera.await(); "B" }
+        val segundo = cache.obtemOuRevalida("a") { cargas++; "C" }
+        libera.complete(Unit)
+        testScheduler.advanceUntilIdle()
+
+        // Then
+        assertEquals("A", primeiro)
+        assertEquals("A", segundo)
+        assertEquals(1, cargas)
+        assertEquals("B", cache.obtem("a"))
+        assertEquals(2, eventos.count { it == EventoCache.OBSOLETO })
+    }
+
+    @Test
+    fun `should load synchronously beyond maximum staleness`() = runTest {
+        // Given
+        val cache = CacheLru<String, String>(
+            maxItems = 10,
+            ttlMs = 1_000,
+            relogio = relogio,
+            maxObsoletoMs = 1_000,
+            escopoRevalidacao = this,
+        )
+        cache.adiciona("a", "A")
+        agora += 2_000_000_000
+
+        // When
+        val resultado = cache.obtemOuRevalida("a") { "B" }
+
+        // Then
+        assertEquals("B", resultado)
+    }
+
+    @Test
+    fun `should keep stale value when background revalidation fails`() = runTest {
+        // Given
+        val cache = CacheLru<String, String>(
+            maxItems = 10,
+            ttlMs = 1_000,
+            relogio = relogio,
+            maxObsoletoMs = 1_000,
+            escopoRevalidacao = this,
+        )
+        cache.adiciona("a", "A")
+        agora += 1_500_000_000
+
+        // When
+        cache.obtemOuRevalida("a") { error("falha") }
+        testScheduler.advanceUntilIdle()
+
+        // Then
+        assertEquals("A", cache.obtemOuRevalida("a") { "B" })
+    }
+
+}
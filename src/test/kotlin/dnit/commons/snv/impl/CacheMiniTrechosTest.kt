@@ -0,0 +1,64 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.model.internal.MiniTrechoSNV
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Test
+
+class CacheMiniTrechosTest {
+
+    private var agora = 0L
+
+    private val trechos = listOf(MiniTrechoSNV(trecho = "060BGO0010", extensao = 10.0, coincidencia = null))
+    private val validadores = ValidadoresHttp("\"v1\"", null)
+
+
+    @Test
+    fun `should keep cached trechos when revalidation answers not modified`() = runBlocking {
+        // Given
+        val cache = CacheMiniTrechos(ttlMs = 1_000, relogio = { agora })
+        cache.obtemCacheOrFetch("GO", "060", "B", "2024-01-01") { RespostaTrechos(trechos, validadores) }
+        agora += 1_000_000_000
+
+        // When
+        var enviados : ValidadoresHttp? = null
+        val indice = cache.obtemCacheOrFetch("GO", "060", "B", "2024-01-01") {
+            enviados = it
+            RespostaTrechos(null, it)
+        }
+
+        // Then
+        assertEquals(validadores, enviados)
+        assertEquals("060BGO0010", indice.trecho(0))
+    }
+
+    @Test
+    fun `should replace cached trechos when modified`() = runBlocking {
+        // Given
+        val cache = CacheMiniTrechos(ttlMs = 1_000, relogio = { agora })
+        cache.obtemCacheOrFetch("GO", "060", "B", "2024-01-01") { RespostaTrechos(trechos, validadores) }
+        agora += 1_000_000_000
+
+        // When
+        val novos = listOf(MiniTrechoSNV(trecho = "060BGO0030", extensao = 5.0, coincidencia = null))
+        val indice = cache.obtemCacheOrFetch("GO", "060", "B", "2024-01-01") { RespostaTrechos(novos, null) }
+
+        // Then
+        assertEquals("060BGO0030", indice.trecho(0))
+    }
+
+    @Test
+    fun `should fetch without validators on first load`() = runBlocking {
+        // Given
+        val cache = CacheMiniTrechos()
+
+        // When
+        var enviados : ValidadoresHttp? = validadores
+        cache.obtemCacheOrFetch("GO", "060", "B", "2024-01-01") { enviados = it; RespostaTrechos(trechos, null) }
+
+        // Then
+        assertNull(enviados)
+    }
+
+}
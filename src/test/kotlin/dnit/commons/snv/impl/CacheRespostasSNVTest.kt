@@ -0,0 +1,74 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.snv.SNVResponse
+import kotlin.test.assertEquals
+import kotlin.test.assertNotNull
+import kotlin.test.assertNull
+import org.junit.jupiter.api.Test
+
+class CacheRespostasSNVTest {
+
+    private val buffers = listOf(150.0, 1_500.0)
+
+
+    @Test
+    fun `should reuse response for nearby coordinate with its own lat lng`() {
+        // Given
+        val cache = CacheRespostasSNV(casasDecimais = 4)
+        cache.adiciona(-16.62111, -49.20778, "2024-01-01", null, null, buffers, listOf(resposta(-16.62111, -49.20778)))
+
+        // When
+        val respostas = cache.obtem(-16.62114, -49.20781, "2024-01-01", null, null, buffers)
+
+        // Then
+        assertNotNull(respostas)
+        assertEquals("060BGO0010", respostas.single().snv)
+        assertEquals(-16.62114, respostas.single().latitude)
+        assertEquals(-49.20781, respostas.single().longitude)
+        assertEquals(12.3, respostas.single().km)
+        assertEquals(1, cache.estatisticas().hits)
+    }
+
+    @Test
+    fun `should separate entries by coordinate date hints and buffers`() {
+        // Given
+        val cache = CacheRespostasSNV(casasDecimais = 4)
+        cache.adiciona(-16.6211, -49.2077, "2024-01-01", "GO", null, buffers, listOf(resposta(-16.6211, -49.2077)))
+
+        // Then
+        assertNotNull(cache.obtem(-16.6211, -49.2077, "2024-01-01", "go", null, buffers))
+        assertNull(cache.obtem(-16.6213, -49.2077, "2024-01-01", "GO", null, buffers))
+        assertNull(cache.obtem(-16.6211, -49.2077, "2024-02-01", "GO", null, buffers))
+        assertNull(cache.obtem(-16.6211, -49.2077, "2024-01-01", null, null, buffers))
+        assertNull(cache.obtem(-16.6211, -49.2077, "2024-01-01", "GO", "060", buffers))
+        assertNull(cache.obtem(-16.6211, -49.2077, "2024-01-01", "GO", null, listOf(150.0)))
+    }
+
+    @Test
+    fun `should not cache empty responses`() {
+        // Given
+        val cache = CacheRespostasSNV()
+
+        // When
+        cache.adiciona(-16.6, -49.2, "2024-01-01", null, null, buffers, emptyList())
+
+        // Then
+        assertNull(cache.obtem(-16.6, -49.2, "2024-01-01", null, null, buffers))
+        assertEquals(0, cache.estatisticas().tamanho)
+    }
+
+
+
+    private fun resposta(lat : Double, lng : Double) = SNVResponse(
+        snv = "060BGO0010",
+        versao = "202401A",
+        coincidencia = null,
+        uf = "GO",
+        br = "060",
+        tipo = "B",
+        latitude = lat,
+        longitude = lng,
+        km = 12.3,
+    )
+
+}
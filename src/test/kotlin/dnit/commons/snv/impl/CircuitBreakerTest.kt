@@ -0,0 +1,92 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.snv.EstadoCircuito
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+import org.junit.jupiter.api.Test
+
+class CircuitBreakerTest {
+
+    private var agora = 0L
+    private val relogio : () -> Long = { agora }
+
+
+    @Test
+    fun `should open after consecutive failures`() {
+        // Given
+        val circuito = CircuitBreaker(limiteFalhas = 3, tempoAbertoMs = 1_000, relogio = relogio)
+
+        // When
+        repeat(2) { falha(circuito) }
+        circuito.permite()
+        circuito.registraSucesso()
+        repeat(3) { falha(circuito) }
+
+        // Then
+        assertEquals(EstadoCircuito.ABERTO, circuito.estado())
+        assertFalse(circuito.permite())
+        assertEquals(1, circuito.aberturas())
+        assertEquals(1, circuito.rejeitadas())
+    }
+
+    @Test
+    fun `should close after successful probe`() {
+        // Given
+        val circuito = CircuitBreaker(limiteFalhas = 1, tempoAbertoMs = 1_000, relogio = relogio)
+        falha(circuito)
+
+        // When
+        agora += 1_000_000_000
+        val sonda = circuito.permite()
+        val segundaSonda = circuito.permite()
+        circuito.registraSucesso()
+
+        // Then
+        assertTrue(sonda)
+        assertFalse(segundaSonda)
+        assertEquals(EstadoCircuito.FECHADO, circuito.estado())
+        assertTrue(circuito.permite())
+    }
+
+    @Test
+    fun `should reopen after failed probe`() {
+        // Given
+        val circuito = CircuitBreaker(limiteFalhas = 1, tempoAbertoMs = 1_000, relogio = relogio)
+        falha(circuito)
+
+        // When
+        agora += 1_000_000_000
+        assertEquals(true, circuito.permite())
+        assertEquals(EstadoCircuito.SEMI_ABERTO, circuito.estado())
+        circuito.registraFalha()
+
+        // Then
+        assertEquals(EstadoCircuito.ABERTO, circuito.estado())
+        assertEquals(2, circuito.aberturas())
+        assertFalse(circuito.permite())
+    }
+
+    @Test
+    fun `should release probe when call is abandoned`() {
+        // Given
+        val circuito = CircuitBreaker(limiteFalhas = 1, tempoAbertoMs = 1_000, relogio = relogio)
+        falha(circuito)
+        agora += 1_000_000_000
+
+        // When
+        circuito.permite()
+        circuito.registraAbandono()
+
+        // Then
+        assertTrue(circuito.permite())
+    }
+
+
+
+    private fun falha(circuito : CircuitBreaker) {
+        circuito.permite()
+        circuito.registraFalha()
+    }
+
+}
@@ -0,0 +1,78 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.exception.CommonException
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.util.zip.Deflater
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.GZIPOutputStream
+import kotlin.test.assertEquals
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+
+class DescompressaoHttpTest {
+
+    private val json = """{"trechos":[""" + List(200) { """{"trecho":"060BGO${it}","extensao":1.5}""" }.joinToString(",") + "]}"
+
+
+    private fun gzip(dados : ByteArray) : ByteArray {
+        val out = ByteArrayOutputStream()
+        GZIPOutputStream(out).use { it.write(dados) }
+        return out.toByteArray()
+    }
+
+    private fun deflate(dados : ByteArray, zlib : Boolean) : ByteArray {
+        val out = ByteArrayOutputStream()
+        DeflaterOutputStream(out, Deflater(Deflater.DEFAULT_COMPRESSION, !zlib)).use { it.write(dados) }
+        return out.toByteArray()
+    }
+
+    private fun descompacta(dados : ByteArray, contentEncoding : String?) : String {
+        return DescompressaoHttp.descompacta(ByteArrayInputStream(dados), contentEncoding).use { String(it.readBytes()) }
+    }
+
+
+    @Test
+    fun `should keep identity bodies`() {
+        assertEquals(json, descompacta(json.toByteArray(), null))
+        assertEquals(json, descompacta(json.toByteArray(), "identity"))
+    }
+
+    @Test
+    fun `should decode gzip`() {
+        assertEquals(json, descompacta(gzip(json.toByteArray()), "gzip"))
+    }
+
+    @Test
+    fun `should decode zlib and raw deflate`() {
+        assertEquals(json, descompacta(deflate(json.toByteArray(), zlib = true), "deflate"))
+        assertEquals(json, descompacta(deflate(json.toByteArray(), zlib = false), "deflate"))
+    }
+
+    @Test
+    fun `should undo chained encodings in reverse order`() {
+        // Given
+        val dados = gzip(deflate(json.toByteArray(), zlib = true))
+
+        // Then
+        assertEquals(json, descompacta(dados, "deflate, gzip"))
+    }
+
+    @Test
+    fun `should parse compressed trechos in streaming`() {
+        // Given
+        val corpo = DescompressaoHttp.descompacta(ByteArrayInputStream(gzip(json.toByteArray())), "gzip")
+
+        // When
+        val trechos = ApiGeoJsonParser.parseTrechos(corpo)
+
+        // Then
+        assertEquals(200, trechos.size)
+    }
+
+    @Test
+    fun `should reject unsupported encoding`() {
+        assertThrows<CommonException> { descompacta(json.toByteArray(), "br") }
+    }
+
+}
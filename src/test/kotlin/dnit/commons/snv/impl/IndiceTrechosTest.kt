@@ -0,0 +1,102 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.model.internal.MiniTrechoSNV
+import kotlin.random.Random
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+import org.junit.jupiter.api.Test
+
+class IndiceTrechosTest {
+
+    private val epsilon = 0.0001
+
+
+    @Test
+    fun `should build cumulative km`() {
+        // Given
+        val indice = IndiceTrechos.de(listOf(trecho("A", 10.0), trecho("B", 5.5), trecho("C", 4.5)))
+
+        // Then
+        assertEquals(3, indice.tamanho)
+        assertEquals(20.0, indice.extensaoTotal)
+        assertEquals(10.0, indice.inicio(1))
+        assertEquals(15.5, indice.fim(1))
+    }
+
+    @Test
+    fun `should find trechos within buffer`() {
+        // Given
+        val indice = IndiceTrechos.de(listOf(trecho("A", 10.0), trecho("B", 5.0), trecho("C", 5.0)))
+
+        // Then
+        assertEquals(listOf("A"), busca(indice, 5.0, 0.0))
+        assertEquals(listOf("A", "B"), busca(indice, 10.0, 0.0))
+        assertEquals(listOf("A", "B"), busca(indice, 9.5, 0.6))
+        assertEquals(listOf("C"), busca(indice, 20.5, 0.6))
+        assertTrue(busca(indice, 25.0, 1.0).isEmpty())
+        assertTrue(IndiceTrechos.VAZIO.let { busca(it, 1.0, 1.0) }.isEmpty())
+    }
+
+    @Test
+    fun `should match linear scan on random data`() {
+        val random = Random(42)
+
+        repeat(200) {
+            // Given
+            val miniTrechos = List(random.nextInt(0, 80)) {
+                trecho("T$it", if (random.nextInt(10) == 0) 0.0 else random.nextDouble(0.0, 30.0))
+            }
+            val indice = IndiceTrechos.de(miniTrechos)
+
+            repeat(50) {
+                val km = random.nextDouble(-5.0, indice.extensaoTotal + 5.0)
+                val bufferKm = random.nextDouble(0.0, 2.0)
+
+                // Then
+                assertEquals(buscaLinear(miniTrechos, km, bufferKm), busca(indice, km, bufferKm))
+            }
+        }
+    }
+
+    @Test
+    fun `should fall back to linear scan with negative extensions`() {
+        // Given
+        val miniTrechos = listOf(trecho("A", 10.0), trecho("B", -8.0), trecho("C", 10.0))
+        val indice = IndiceTrechos.de(miniTrechos)
+
+        // Then
+        assertEquals(buscaLinear(miniTrechos, 3.0, 0.0), busca(indice, 3.0, 0.0))
+    }
+
+
+
+    private fun busca(indice : IndiceTrechos, km : Double, bufferKm : Double) : List<String> {
+        val resultado = mutableListOf<String>()
+        indice.forEachProximo(km, bufferKm, epsilon) { resultado.add(indice.trecho(it)) }
+        return resultado
+    }
+
+
+    private fun buscaLinear(trechos : List<MiniTrechoSNV>, km : Double, bufferKm : Double) : List<String> {
+        var kmAcumulado = 0.0
+        val resultado = mutableListOf<String>()
+
+        for (trecho in trechos) {
+            val inicioTrecho = kmAcumulado
+            kmAcumulado += trecho.extensao
+
+            val isExactMatch = km >= inicioTrecho && km <= kmAcumulado
+            val isApproximateMatch = !isExactMatch
+                                   && km + epsilon >= inicioTrecho - bufferKm
+                                   && km - epsilon <= kmAcumulado + bufferKm
+
+            if (isExactMatch || isApproximateMatch) resultado.add(trecho.trecho)
+        }
+
+        return resultado
+    }
+
+
+    private fun trecho(codigo : String, extensao : Double) = MiniTrechoSNV(codigo, extensao, null)
+
+}
@@ -0,0 +1,125 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.exception.CommonException
+import dnit.commons.exception.TempoEsgotadoException
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.test.runTest
+import kotlinx.coroutines.yield
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+
+@OptIn(ExperimentalCoroutinesApi::class)
+class LimitadorApiGeoTest {
+
+    @Test
+    fun `should space calls according to rate`() = runTest {
+        // Given
+        val limitador = LimitadorApiGeo(
+            requisicoesPorSegundo = 10.0,
+            relogio = { testScheduler.currentTime * 1_000_000 },
+        )
+        val instantes = mutableListOf<Long>()
+
+        // When
+        repeat(3) { limitador.executa { instantes.add(testScheduler.currentTime) } }
+
+        // Then
+        assertEquals(listOf(0L, 100L, 200L), instantes)
+        assertEquals(3, limitador.estatisticas().admitidas)
+        assertEquals(100.0, limitador.estatisticas().esperaMaximaMs)
+    }
+
+    @Test
+    fun `should cap concurrent calls and report queue depth`() = runBlocking {
+        // Given
+        // Os blocos executam no Dispatchers.IO, fora do tempo virtual do runTest, por isso o teste usa tempo real
+        val limitador = LimitadorApiGeo(maxConcorrencia = 2)
+        val libera = CompletableDeferred<Unit>()
+
+        // When
+        val chamadas = List(5) { async { limitador.executa { libera.await() } } }
+        while (limitador.estatisticas().emExecucao < 2) yield()
+        val estatisticas = limitador.estatisticas()
+        libera.complete(Unit)
+        chamadas.awaitAll()
+
+        // Then
+        assertEquals(2, estatisticas.emExecucao)
+        assertEquals(3, estatisticas.emEspera)
+        assertEquals(5, limitador.estatisticas().admitidas)
+    }
+
+    @Test
+    fun `should fail when waiting longer than limit`() = runTest {
+        // Given
+        val limitador = LimitadorApiGeo(maxConcorrencia = 1, maxEsperaMs = 100)
+        val libera = CompletableDeferred<Unit>()
+        val ocupada = launch { limitador.executa { libera.await() } }
+        while (limitador.estatisticas().emExecucao < 1) yield()
+
+        // When
+        assertThrows<CommonException> { limitador.executa { } }
+        libera.complete(Unit)
+        ocupada.join()
+
+        // Then
+        assertEquals(1, limitador.estatisticas().esperasExcedidas)
+    }
+
+    @Test
+    fun `should share concurrency slots between suspended and blocking calls`() = runBlocking {
+        // Given
+        val limitador = LimitadorApiGeo(maxConcorrencia = 1)
+        val libera = CompletableDeferred<Unit>()
+        val ocupada = launch { limitador.executa { libera.await() } }
+        while (limitador.estatisticas().emExecucao < 1) yield()
+        val thread = Thread.currentThread()
+        val executouEm = CompletableDeferred<Thread>()
+
+        // When
+        val bloqueante = Thread { limitador.executaBloqueante(null) { executouEm.complete(Thread.currentThread()) } }
+        bloqueante.start()
+        while (limitador.estatisticas().emEspera < 1) yield()
+        val emEspera = limitador.estatisticas().emEspera
+        libera.complete(Unit)
+        ocupada.join()
+        bloqueante.join(5_000)
+
+        // Then
+        assertEquals(1, emEspera)
+        assertEquals(bloqueante, executouEm.await())
+        assertTrue(executouEm.await() != thread)
+        assertEquals(2, limitador.estatisticas().admitidas)
+        assertEquals(0, limitador.estatisticas().emExecucao)
+    }
+
+    @Test
+    fun `should fail blocking call when waiting longer than limit or call deadline`() = runBlocking {
+        // Given
+        val limitador = LimitadorApiGeo(maxConcorrencia = 1, maxEsperaMs = 100)
+        val libera = CompletableDeferred<Unit>()
+        val ocupada = launch(Dispatchers.Default) { limitador.executa { libera.await() } }
+        while (limitador.estatisticas().emExecucao < 1) yield()
+
+        // When
+        assertThrows<CommonException> { limitador.executaBloqueante(null) { } }
+        val erro = assertThrows<TempoEsgotadoException> { limitador.executaBloqueante(PrazoSNV.cria(50)) { } }
+        libera.complete(Unit)
+        ocupada.join()
+
+        // Then
+        assertEquals(50, erro.timeoutMs)
+        assertEquals(1, limitador.estatisticas().esperasExcedidas)
+        limitador.executaBloqueante(null) { } // As vagas abandonadas foram devolvidas
+        assertEquals(2, limitador.estatisticas().admitidas)
+    }
+
+}
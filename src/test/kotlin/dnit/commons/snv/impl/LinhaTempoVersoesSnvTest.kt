@@ -0,0 +1,115 @@
+package dnit.commons.snv.impl
+
+import java.time.LocalDate
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import org.junit.jupiter.api.Test
+
+class LinhaTempoVersoesSnvTest {
+
+    private var agora = 0L
+    private val relogio : () -> Long = { agora }
+
+
+    @Test
+    fun `should answer known dates and dates inside an interval`() {
+        // Given
+        val linhaTempo = LinhaTempoVersoesSnv(relogio = relogio)
+        linhaTempo.registra(data("2024-01-10"), "202401A")
+        linhaTempo.registra(data("2024-03-01"), "202401A")
+        linhaTempo.registra(data("2024-05-01"), "202404A")
+
+        // Then
+        assertEquals("202401A", linhaTempo.consulta(data("2024-01-10")))
+        assertEquals("202401A", linhaTempo.consulta(data("2024-02-15")))
+        assertNull(linhaTempo.consulta(data("2024-04-01"))) // Entre versões diferentes
+        assertNull(linhaTempo.consulta(data("2024-01-01"))) // Antes do primeiro registro
+        assertNull(linhaTempo.consulta(data("2024-06-01"))) // Após o último registro
+    }
+
+    @Test
+    fun `should ignore expired observations`() {
+        // Given
+        val linhaTempo = LinhaTempoVersoesSnv(ttlMs = 1_000, relogio = relogio)
+        linhaTempo.registra(data("2024-01-10"), "202401A")
+
+        // When
+        agora += 1_000_000_000
+
+        // Then
+        assertNull(linhaTempo.consulta(data("2024-01-10")))
+    }
+
+    @Test
+    fun `should replace expired boundaries with new observations`() {
+        // Given
+        val linhaTempo = LinhaTempoVersoesSnv(ttlMs = 1_000, relogio = relogio)
+        linhaTempo.registra(data("2024-01-01"), "202401A")
+        linhaTempo.registra(data("2024-01-31"), "202401A")
+        agora += 1_000_000_000
+
+        // When
+        linhaTempo.registra(data("2024-01-15"), "202401A")
+
+        // Then
+        assertEquals("202401A", linhaTempo.consulta(data("2024-01-15")))
+        assertNull(linhaTempo.consulta(data("2024-01-20")))
+    }
+
+    @Test
+    fun `should keep only interval boundaries`() {
+        // Given
+        val linhaTempo = LinhaTempoVersoesSnv(relogio = relogio)
+
+        // When
+        listOf("2024-01-01", "2024-01-20", "2024-01-05", "2024-01-12", "2024-01-31").forEach {
+            linhaTempo.registra(data(it), "202401A")
+        }
+
+        // Then
+        assertEquals(2, linhaTempo.tamanho())
+        assertEquals("202401A", linhaTempo.consulta(data("2024-01-15")))
+    }
+
+
+
+    private fun data(valor : String) : LocalDate = LocalDate.parse(valor)
+
+    @Test
+    fun `should answer stale observations within maximum staleness`() {
+        // Given
+        val linhaTempo = LinhaTempoVersoesSnv(ttlMs = 1_000, maxObsoletoMs = 1_000, relogio = relogio)
+        linhaTempo.registra(data("2024-01-10"), "202401A")
+
+        // When
+        agora += 1_500_000_000
+
+        // Then
+        assertNull(linhaTempo.consulta(data("2024-01-10")))
+        assertEquals("202401A", linhaTempo.consultaObsoleta(data("2024-01-10")))
+
+        // When
+        agora += 500_000_000
+
+        // Then
+        assertNull(linhaTempo.consultaObsoleta(data("2024-01-10")))
+    }
+
+    @Test
+    fun `should keep fresh observation between stale borders`() {
+        // Given
+        val linhaTempo = LinhaTempoVersoesSnv(ttlMs = 1_000, maxObsoletoMs = 10_000, relogio = relogio)
+        linhaTempo.registra(data("2024-01-10"), "202401A")
+        linhaTempo.registra(data("2024-03-01"), "202401A")
+        agora += 2_000_000_000
+
+        // When
+        linhaTempo.registra(data("2024-02-01"), "202401A")
+
+        // Then
+        assertEquals("202401A", linhaTempo.consulta(data("2024-02-01")))
+        assertNull(linhaTempo.consulta(data("2024-02-15")))
+        assertEquals("202401A", linhaTempo.consultaObsoleta(data("2024-02-15")))
+    }
+
+}
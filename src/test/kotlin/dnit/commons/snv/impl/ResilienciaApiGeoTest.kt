@@ -0,0 +1,196 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.exception.CommonException
+import dnit.commons.exception.TempoEsgotadoException
+import dnit.commons.snv.EndpointApiGeo
+import dnit.commons.snv.EstadoCircuito
+import dnit.commons.snv.MetricasSNVEmMemoria
+import kotlin.test.assertEquals
+import kotlin.test.assertIs
+import kotlin.test.assertTrue
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.test.runTest
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+
+class ResilienciaApiGeoTest {
+
+    @Test
+    fun `should retry until success`() = runTest {
+        // Given
+        val resiliencia = ResilienciaApiGeo()
+        val metricas = MetricasSNVEmMemoria()
+        MetricasSNV.registra(metricas)
+        var chamadas = 0
+
+        // When
+        val resultado = resiliencia.executa(EndpointApiGeo.ROTAS, maxTentativas = 3, delayMs = 10) {
+            chamadas++
+            if (chamadas < 3) throw CommonException("falha")
+            "ok"
+        }
+
+        MetricasSNV.remove(metricas)
+
+        // Then
+        assertEquals("ok", resultado)
+        assertEquals(3, chamadas)
+        assertEquals(2, metricas.retries(EndpointApiGeo.ROTAS))
+    }
+
+    @Test
+    fun `should fail fast when circuit is open`() = runTest {
+        // Given
+        val resiliencia = ResilienciaApiGeo(CircuitBreaker(limiteFalhas = 2, tempoAbertoMs = 60_000))
+        var chamadas = 0
+        resiliencia.executaOuPadrao(EndpointApiGeo.ROTAS, maxTentativas = 5, delayMs = 10, defaultValue = "") {
+            chamadas++
+            throw CommonException("falha")
+        }
+
+        // When
+        val resultado = resiliencia.executaOuPadrao(EndpointApiGeo.ROTAS, maxTentativas = 5, delayMs = 10, defaultValue = "degradado") {
+            chamadas++
+            "ok"
+        }
+
+        // Then
+        assertEquals("degradado", resultado)
+        assertEquals(2, chamadas)
+        assertEquals(EstadoCircuito.ABERTO, resiliencia.estatisticas().estado)
+        assertEquals(2, resiliencia.estatisticas().rejeitadas) // 3ª tentativa da primeira chamada + segunda chamada
+    }
+
+    @Test
+    fun `should stop retrying when budget is exhausted`() = runTest {
+        // Given
+        val resiliencia = ResilienciaApiGeo(
+            CircuitBreaker(limiteFalhas = 100),
+            OrcamentoRetry(proporcao = 0.0, maximo = 2.0),
+        )
+        var chamadas = 0
+
+        // When
+        assertThrows<CommonException> {
+            resiliencia.executa(EndpointApiGeo.ROTAS, maxTentativas = 10, delayMs = 10) {
+                chamadas++
+                throw CommonException("falha")
+            }
+        }
+
+        // Then
+        assertEquals(3, chamadas) // Tentativa original + 2 retries do orçamento
+        assertEquals(1, resiliencia.estatisticas().retriesNegados)
+        assertEquals(0.0, resiliencia.estatisticas().tokensRetry)
+    }
+
+    @Test
+    fun `should not wait a retry delay beyond the call deadline`() = runBlocking {
+        // Given
+        val resiliencia = ResilienciaApiGeo()
+        var chamadas = 0
+        val inicio = System.nanoTime()
+
+        // When
+        val erro = assertThrows<TempoEsgotadoException> {
+            PrazoSNV.comPrazo(500) {
+                resiliencia.executa(EndpointApiGeo.ROTAS, maxTentativas = 5, delayMs = 10_000) {
+                    chamadas++
+                    throw CommonException("falha")
+                }
+            }
+        }
+
+        // Then
+        assertEquals(1, chamadas)
+        assertEquals(500, erro.timeoutMs)
+        assertIs<CommonException>(erro.cause)
+        assertTrue(System.nanoTime() - inicio < 5_000_000_000)
+    }
+
+    @Test
+    fun `should cancel the attempt in progress when the deadline expires`() = runBlocking {
+        // Given
+        val resiliencia = ResilienciaApiGeo(CircuitBreaker())
+
+        // When
+        assertThrows<TempoEsgotadoException> {
+            PrazoSNV.comPrazo(100) {
+                resiliencia.executa(EndpointApiGeo.ROTAS, maxTentativas = 5, delayMs = 10) {
+                    delay(10_000)
+                    "ok"
+                }
+            }
+        }
+
+        // Then
+        assertEquals(0, resiliencia.estatisticas().falhasConsecutivas) // O prazo não conta como falha da API-Geo
+    }
+
+    @Test
+    fun `should retry every attempt without circuit or budget by default`() = runTest {
+        // Given
+        val resiliencia = ResilienciaApiGeo()
+        var chamadas = 0
+
+        // When
+        repeat(3) {
+            resiliencia.executaOuPadrao(EndpointApiGeo.ROTAS, maxTentativas = 4, delayMs = 10, defaultValue = "") {
+                chamadas++
+                throw CommonException("falha")
+            }
+        }
+
+        // Then
+        assertEquals(12, chamadas)
+        assertEquals(EstadoCircuito.FECHADO, resiliencia.estatisticas().estado)
+        assertEquals(0, resiliencia.estatisticas().rejeitadas)
+    }
+
+    @Test
+    fun `should retry blocking calls on the calling thread sleeping between attempts`() {
+        // Given
+        val resiliencia = ResilienciaApiGeo()
+        val threads = mutableSetOf<Thread>()
+        var chamadas = 0
+        val inicio = System.nanoTime()
+
+        // When
+        val resultado = resiliencia.executaBloqueante(EndpointApiGeo.ROTAS, maxTentativas = 3, delayMs = 50, prazo = null) {
+            threads.add(Thread.currentThread())
+            chamadas++
+            if (chamadas < 3) throw CommonException("falha")
+            "ok"
+        }
+
+        // Then
+        assertEquals("ok", resultado)
+        assertEquals(3, chamadas)
+        assertEquals(setOf(Thread.currentThread()), threads)
+        assertTrue(System.nanoTime() - inicio >= 100_000_000)
+    }
+
+    @Test
+    fun `should not sleep a blocking retry delay beyond the call deadline`() {
+        // Given
+        val resiliencia = ResilienciaApiGeo()
+        val prazo = PrazoSNV.cria(500)
+        var chamadas = 0
+
+        // When
+        val erro = assertThrows<TempoEsgotadoException> {
+            resiliencia.executaOuPadraoBloqueante(EndpointApiGeo.ROTAS, maxTentativas = 5, delayMs = 10_000,
+                                                  prazo = prazo, defaultValue = "") {
+                chamadas++
+                throw CommonException("falha")
+            }
+        }
+
+        // Then
+        assertEquals(1, chamadas)
+        assertEquals(500, erro.timeoutMs)
+        assertTrue(prazo!!.atingido)
+    }
+
+}
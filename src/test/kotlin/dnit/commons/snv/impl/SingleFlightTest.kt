@@ -0,0 +1,119 @@
+package dnit.commons.snv.impl
+
+import dnit.commons.exception.TempoEsgotadoException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+import kotlin.test.assertEquals
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.yield
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+
+class SingleFlightTest {
+
+    @Test
+    fun `should run block once for concurrent calls with the same key`() = runBlocking {
+        // Given
+        val singleFlight = SingleFlight<String, String>()
+        val libera = CompletableDeferred<Unit>()
+        val execucoes = AtomicInteger()
+
+        // When
+        val chamadas = List(5) {
+            async(start = CoroutineStart.UNDISPATCHED) {
+                singleFlight.executa("chave") {
+                    execucoes.incrementAndGet()
+                    libera.await()
+                    "resultado"
+                }
+            }
+        }
+        val emAndamento = singleFlight.emAndamento()
+        libera.complete(Unit)
+
+        // Then
+        assertEquals(List(5) { "resultado" }, chamadas.awaitAll())
+        assertEquals(1, execucoes.get())
+        assertEquals(1, emAndamento)
+        assertEquals(0, singleFlight.emAndamento())
+    }
+
+    @Test
+    fun `should let a waiter take over when the leader is cancelled`() = runBlocking {
+        // Given
+        val singleFlight = SingleFlight<String, String>()
+        val lider = async(start = CoroutineStart.UNDISPATCHED) {
+            singleFlight.executa("chave") { CompletableDeferred<String>().await() }
+        }
+        val aguardando = async(start = CoroutineStart.UNDISPATCHED) {
+            singleFlight.executa("chave") { "novo lider" }
+        }
+
+        // When
+        lider.cancel()
+        yield()
+
+        // Then
+        assertEquals("novo lider", aguardando.await())
+        assertThrows<CancellationException> { lider.await() }
+        assertEquals(0, singleFlight.emAndamento())
+    }
+
+    @Test
+    fun `should let blocking callers share a suspended execution`() = runBlocking {
+        // Given
+        val singleFlight = SingleFlight<String, String>()
+        val libera = CompletableDeferred<Unit>()
+        val execucoes = AtomicInteger()
+        val lider = async(Dispatchers.Default) {
+            singleFlight.executa("chave") {
+                execucoes.incrementAndGet()
+                libera.await()
+                "resultado"
+            }
+        }
+        while (singleFlight.emAndamento() < 1) yield()
+
+        // When
+        val resultado = AtomicReference<String>()
+        val bloqueante = Thread { resultado.set(singleFlight.executaBloqueante("chave", null) { "repetido" }) }
+        bloqueante.start()
+        Thread.sleep(50)
+        libera.complete(Unit)
+        bloqueante.join(5_000)
+
+        // Then
+        assertEquals("resultado", lider.await())
+        assertEquals("resultado", resultado.get())
+        assertEquals(1, execucoes.get())
+    }
+
+    @Test
+    fun `should stop waiting for another blocking call when the deadline expires`() {
+        // Given
+        val singleFlight = SingleFlight<String, String>()
+        val libera = CountDownLatch(1)
+        val lider = Thread { singleFlight.executaBloqueante("chave", null) { libera.await(); "resultado" } }
+        lider.start()
+        while (singleFlight.emAndamento() < 1) Thread.yield()
+
+        // When
+        val erro = assertThrows<TempoEsgotadoException> {
+            singleFlight.executaBloqueante("chave", PrazoSNV.cria(50)) { "repetido" }
+        }
+        libera.countDown()
+        lider.join(5_000)
+
+        // Then
+        assertEquals(50, erro.timeoutMs)
+        assertEquals(0, singleFlight.emAndamento())
+    }
+
+}
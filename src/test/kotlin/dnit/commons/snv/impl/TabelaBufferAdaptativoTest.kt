@@ -0,0 +1,82 @@
+package dnit.commons.snv.impl
+
+import java.nio.file.Path
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+class TabelaBufferAdaptativoTest {
+
+    private val buffers = listOf(150.0, 600.0, 1_050.0, 1_500.0)
+
+
+    @Test
+    fun `should keep original sequence for unknown cells`() {
+        // Given
+        val tabela = TabelaBufferAdaptativo()
+
+        // Then
+        assertEquals(buffers, tabela.ordena(-16.6, -49.2, buffers))
+    }
+
+    @Test
+    fun `should start sequence one step below learned buffer`() {
+        // Given
+        val tabela = TabelaBufferAdaptativo(tamanhoCelulaGraus = 0.05)
+
+        // When
+        tabela.registra(-16.621, -49.207, 1_050.0)
+
+        // Then
+        assertEquals(listOf(600.0, 1_050.0, 1_500.0, 150.0), tabela.ordena(-16.622, -49.208, buffers))
+        assertEquals(buffers, tabela.ordena(-16.7, -49.207, buffers))
+    }
+
+    @Test
+    fun `should keep sequence when smallest buffer was learned`() {
+        // Given
+        val tabela = TabelaBufferAdaptativo(tamanhoCelulaGraus = 0.05)
+
+        // When
+        tabela.registra(-16.621, -49.207, 150.0)
+
+        // Then
+        assertEquals(buffers, tabela.ordena(-16.622, -49.208, buffers))
+    }
+
+    @Test
+    fun `should bound number of cells`() {
+        // Given
+        val tabela = TabelaBufferAdaptativo(tamanhoCelulaGraus = 1.0, maxCelulas = 2)
+
+        // When
+        tabela.registra(1.5, 1.5, 150.0)
+        tabela.registra(2.5, 2.5, 600.0)
+        tabela.registra(3.5, 3.5, 1_050.0)
+
+        // Then
+        assertEquals(2, tabela.tamanho())
+        assertNull(tabela.bufferAprendido(1.5, 1.5))
+    }
+
+    @Test
+    fun `should persist and reload table`(@TempDir diretorio : Path) {
+        // Given
+        val arquivo = diretorio.resolve("buffers.txt")
+        val tabela = TabelaBufferAdaptativo(arquivo = arquivo)
+        tabela.registra(-16.621, -49.207, 600.0)
+        tabela.registra(-3.1, -60.0, 1_500.0)
+
+        // When
+        tabela.salva()
+        val recarregada = TabelaBufferAdaptativo(arquivo = arquivo)
+        val outroTamanho = TabelaBufferAdaptativo(tamanhoCelulaGraus = 0.1, arquivo = arquivo)
+
+        // Then
+        assertEquals(600.0, recarregada.bufferAprendido(-16.621, -49.207))
+        assertEquals(1_500.0, recarregada.bufferAprendido(-3.1, -60.0))
+        assertEquals(0, outroTamanho.tamanho())
+    }
+
+}